@@ -17,18 +17,20 @@
 package com.horecka.petdot.navigationdrawer;
 
 import android.app.Activity;
+import android.app.AlertDialog;
 import android.app.Fragment;
 import android.app.FragmentManager;
 import android.app.FragmentTransaction;
 import android.app.ListFragment;
 import android.content.Context;
-import android.content.SharedPreferences;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
-import android.graphics.Path;
+import android.os.Build;
 import android.os.Bundle;
+import android.util.Log;
+import android.view.Choreographer;
 import android.view.MotionEvent;
 import android.view.Window;
 import android.widget.ArrayAdapter;
@@ -43,6 +45,7 @@ import android.text.TextWatcher;
 import android.text.Editable;
 import java.util.regex.Pattern;
 import android.widget.TextView.OnEditorActionListener;
+import android.annotation.TargetApi;
 import android.app.DialogFragment;
 import android.content.res.Configuration;
 import android.support.v4.app.ActionBarDrawerToggle;
@@ -59,6 +62,26 @@ import android.view.KeyEvent;
 import android.view.WindowManager.LayoutParams;
 import android.view.inputmethod.EditorInfo;
 
+import com.horecka.petdot.core.AxisOrientation;
+import com.horecka.petdot.core.CommandSender;
+import com.horecka.petdot.core.ConfigHolder;
+import com.horecka.petdot.core.DoubleTapDetector;
+import com.horecka.petdot.core.Endpoint;
+import com.horecka.petdot.core.LinkHealth;
+import com.horecka.petdot.core.MoveLimits;
+import com.horecka.petdot.core.MotionEngine;
+import com.horecka.petdot.core.PetDotConfig;
+import com.horecka.petdot.core.PetDotMetrics;
+import com.horecka.petdot.core.Profile;
+import com.horecka.petdot.core.ProfileStore;
+import com.horecka.petdot.core.ServoTransform;
+import com.horecka.petdot.core.SettingsStore;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
 /**
  * This example illustrates a common usage of the DrawerLayout widget
  * in the Android support library.
@@ -86,11 +109,21 @@ import android.view.inputmethod.EditorInfo;
  * An action should be an operation performed on the current contents of the window,
  * for example enabling or disabling a data overlay on top of the current content.</p>
  */
-public class NavigationDrawerActivity extends Activity implements PreferencesAdapter.OnItemClickListener {
+public class NavigationDrawerActivity extends Activity implements PreferencesAdapter.OnItemClickListener,
+        TrailSurfaceView.Listener {
     public static final String PREFS_NAME = "PetDotPreferences";
+    private static final String TAG = "PetDot";
+    /* Live link status is redrawn at most this often */
+    private static final long STATUS_INTERVAL_MILLIS = 250;
+    private static final int CONNECT_POSITION = 3;
+    private static final int PROFILE_POSITION = 7;
+    private static final String PROFILES_FILE = "profiles.txt";
 
     private DrawerLayout mDrawerLayout;
     private RecyclerView mDrawerList;
+    private PreferencesAdapter mDrawerAdapter;
+    /* Saved profiles, listed in the drawer after the settings; null until loaded */
+    private List<Profile> mProfiles;
     private ActionBarDrawerToggle mDrawerToggle;
 
     private CharSequence mDrawerTitle;
@@ -101,17 +134,33 @@ public class NavigationDrawerActivity extends Activity implements PreferencesAda
     private String[] mPreferencesDefaultValues;
 
     private FrameLayout mContentFrame;
-    private DrawingView dv ;
+    private View dv ;
     private Paint mPaint;
-
-    private static SharedPreferences prefs;
+    private int mSurfaceWidth;
+    private int mSurfaceHeight;
+
+    private static SettingsStore settings;
+    private static ProfileStore profiles;
+    private static final PetDotMetrics metrics = new PetDotMetrics();
+    /* Decoded settings; every thread reads them from here rather than parsing them */
+    private static final ConfigHolder config = new ConfigHolder(PetDotConfig.DEFAULT);
+    private static final CommandSender commandSender = new CommandSender(metrics, config);
+    /* Drives the laser in the random control modes, on its own thread */
+    private static final MotionEngine motionEngine = new MotionEngine(commandSender);
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_navigation_drawer);
 
-        prefs = getSharedPreferences(PREFS_NAME, 0);
+        if (settings == null) {
+            // outlives the activity so changes still waiting to be written survive rotation
+            settings = new SettingsStore(new SharedPreferencesBackend(
+                    getApplicationContext().getSharedPreferences(PREFS_NAME, 0)));
+            // not read until the drawer first opens
+            profiles = new ProfileStore(
+                    new File(getApplicationContext().getFilesDir(), PROFILES_FILE));
+        }
 
         mTitle = mDrawerTitle = getTitle();
 
@@ -119,6 +168,9 @@ public class NavigationDrawerActivity extends Activity implements PreferencesAda
         mPreferencesText = getResources().getStringArray(R.array.preferences_text);
         mPreferencesKeys = getResources().getStringArray(R.array.preferences_keys);
         mPreferencesDefaultValues = getResources().getStringArray(R.array.preferences_default_values);
+        publishConfig();
+        // idles in manual mode; runs like the sender whether or not the activity is in front
+        motionEngine.start();
 
         mDrawerLayout = (DrawerLayout) findViewById(R.id.drawer_layout);
         mDrawerList = (RecyclerView) findViewById(R.id.left_drawer);
@@ -131,7 +183,8 @@ public class NavigationDrawerActivity extends Activity implements PreferencesAda
         mDrawerList.setLayoutManager(new LinearLayoutManager(this));
 
         // set up the drawer's list view with items and click listener
-        mDrawerList.setAdapter(new PreferencesAdapter(mPreferencesTitles, this));
+        mDrawerAdapter = new PreferencesAdapter(mPreferencesTitles, this);
+        mDrawerList.setAdapter(mDrawerAdapter);
         // enable ActionBar app icon to behave as action to toggle nav drawer
         getActionBar().setDisplayHomeAsUpEnabled(true);
         getActionBar().setHomeButtonEnabled(true);
@@ -146,11 +199,15 @@ public class NavigationDrawerActivity extends Activity implements PreferencesAda
                 R.string.drawer_close  /* "close drawer" description for accessibility */
         ) {
             public void onDrawerClosed(View view) {
+                mDrawerList.removeCallbacks(mDrawerStatusUpdater);
                 getActionBar().setTitle(mTitle);
                 invalidateOptionsMenu(); // creates call to onPrepareOptionsMenu()
             }
 
             public void onDrawerOpened(View drawerView) {
+                mDrawerList.removeCallbacks(mDrawerStatusUpdater);
+                mDrawerStatusUpdater.run();
+                if (mProfiles == null) loadProfiles(null);
                 getActionBar().setTitle(mDrawerTitle);
                 invalidateOptionsMenu(); // creates call to onPrepareOptionsMenu()
             }
@@ -161,9 +218,6 @@ public class NavigationDrawerActivity extends Activity implements PreferencesAda
             selectItem(0);
         }
 
-        dv = new DrawingView(this);
-        mContentFrame.addView(dv);
-        //setContentView(dv);
         mPaint = new Paint();
         mPaint.setAntiAlias(true);
         mPaint.setDither(true);
@@ -172,6 +226,68 @@ public class NavigationDrawerActivity extends Activity implements PreferencesAda
         mPaint.setStrokeJoin(Paint.Join.ROUND);
         mPaint.setStrokeCap(Paint.Cap.ROUND);
         mPaint.setStrokeWidth(12);
+        // the render thread surface keeps the trail smooth while the UI thread is busy
+        // with drawer animations and dialogs
+        Bitmap.Config trailConfig = getResources().getBoolean(R.bool.trail_buffer_rgb565)
+                ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+        if (getResources().getBoolean(R.bool.render_on_own_thread)) {
+            dv = new TrailSurfaceView(this, mPaint, trailConfig, metrics, this);
+        } else {
+            dv = new DrawingView(this, trailConfig);
+        }
+        mContentFrame.addView(dv);
+        //setContentView(dv);
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        mDrawerList.removeCallbacks(mDrawerStatusUpdater);
+        // the process may be killed from here on; usually everything is written already
+        if (!settings.flush()) Log.w(TAG, "Could not save settings");
+        if (!profiles.flush()) Log.w(TAG, "Could not save profiles");
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        if (mDrawerLayout.isDrawerOpen(mDrawerList)) mDrawerStatusUpdater.run();
+    }
+
+    /* Keeps the link status under the Connect item current while the drawer is open */
+    private final Runnable mDrawerStatusUpdater = new Runnable() {
+        @Override
+        public void run() {
+            String status = commandSender.isRunning() ? appendLinkStatus(new StringBuilder()).toString()
+                    : "Not Connected";
+            if (mDrawerAdapter.setStatus(CONNECT_POSITION, status)) {
+                mDrawerAdapter.notifyItemChanged(CONNECT_POSITION);
+            }
+            mDrawerList.postDelayed(this, STATUS_INTERVAL_MILLIS);
+        }
+    };
+
+    /* e.g. "RTT 3.2 ms, jitter 0.4 ms, loss 0%", from the heartbeats */
+    private static StringBuilder appendLinkStatus(StringBuilder out) {
+        commandSender.getLinkHealth().appendSummary(out, System.nanoTime());
+        return out;
+    }
+
+    private static int getLinkStatusColor() {
+        LinkHealth health = commandSender.getLinkHealth();
+        long now = System.nanoTime();
+        if (!health.isResponding(now)) return Color.RED;
+        return health.isDegraded(now) ? Color.YELLOW : Color.GREEN;
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        // keep streaming across rotation, but not once the user has left the activity
+        if (isFinishing()) {
+            motionEngine.stop();
+            commandSender.stop();
+        }
     }
 
     @Override
@@ -198,15 +314,131 @@ public class NavigationDrawerActivity extends Activity implements PreferencesAda
         }
         // Handle action buttons
         switch (item.getItemId()) {
+            case R.id.action_dump_latency:
+                dumpLatency();
+                return true;
+            case R.id.action_dump_metrics:
+                dumpMetrics();
+                return true;
             default:
                 return super.onOptionsItemSelected(item);
         }
     }
 
+    /* Logs the touch-to-servo latency histograms and shows them in a dialog */
+    private void dumpLatency() {
+        StringBuilder sb = new StringBuilder();
+        commandSender.getTracer().dump(sb);
+        String dump = sb.toString();
+        Log.i(TAG, dump);
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.action_dump_latency)
+                .setMessage(dump)
+                .setPositiveButton(android.R.string.ok, null)
+                .show();
+    }
+
+    /* Logs the pipeline counters and shows them in a dialog */
+    private void dumpMetrics() {
+        StringBuilder sb = new StringBuilder();
+        metrics.dump(sb);
+        String dump = sb.toString();
+        Log.i(TAG, dump);
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.action_dump_metrics)
+                .setMessage(dump)
+                .setPositiveButton(android.R.string.ok, null)
+                .show();
+    }
+
     /* The click listener for RecyclerView in the navigation drawer */
     @Override
     public void onClick(View view, int position) {
-        selectItem(position);
+        if (position >= mPreferencesTitles.length) {
+            switchProfile(mProfiles.get(position - mPreferencesTitles.length));
+        } else {
+            selectItem(position);
+        }
+    }
+
+    /*
+     * Reads the profiles file off the UI thread, adding saved to it unless it is null, then
+     * lists the profiles in the drawer
+     */
+    private void loadProfiles(final Profile saved) {
+        new Thread("PetDot-profiles-load") {
+            @Override
+            public void run() {
+                // posted under the store's lock so that the drawer gets the lists in order
+                synchronized (profiles) {
+                    if (saved != null) profiles.put(saved);
+                    final List<Profile> loaded = profiles.getProfiles();
+                    mDrawerList.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            showProfiles(loaded);
+                        }
+                    });
+                }
+            }
+        }.start();
+    }
+
+    private void showProfiles(List<Profile> loaded) {
+        mProfiles = loaded;
+        String active = GetValue(mPreferencesKeys[PROFILE_POSITION],
+                mPreferencesDefaultValues[PROFILE_POSITION]);
+        String[] items = Arrays.copyOf(mPreferencesTitles,
+                mPreferencesTitles.length + loaded.size());
+        for (int i = 0; i < loaded.size(); i++) {
+            String name = loaded.get(i).name;
+            items[mPreferencesTitles.length + i] = getString(name.equals(active)
+                    ? R.string.profile_item_active : R.string.profile_item, name);
+        }
+        mDrawerAdapter.setDataset(items);
+    }
+
+    /**
+     * Saves the current endpoint, limits and axes as the profile {@code name}, replacing any
+     * profile of that name. The drawer lists it once the store has taken it, in the
+     * background since that may read the file first.
+     */
+    void saveProfile(String name) {
+        loadProfiles(Profile.of(name, config.get()));
+    }
+
+    /**
+     * Makes {@code profile}'s settings the current ones. The transform is swapped at once,
+     * and a running sender reconnects in the background if the profile is for another unit;
+     * new limits and axes reach the live stream without reconnecting.
+     */
+    private void switchProfile(Profile profile) {
+        Endpoint previous = config.get().endpoint;
+        Save(mPreferencesKeys[1], profile.endpoint.host, mPreferencesDefaultValues[1]);
+        Save(mPreferencesKeys[2], Integer.toString(profile.endpoint.port),
+                mPreferencesDefaultValues[2]);
+        Save(mPreferencesKeys[4], profile.limits.toString(), mPreferencesDefaultValues[4]);
+        Save(mPreferencesKeys[5], profile.axes.toString(), mPreferencesDefaultValues[5]);
+        Save(mPreferencesKeys[PROFILE_POSITION], profile.name,
+                mPreferencesDefaultValues[PROFILE_POSITION]);
+        publishConfig();
+        Endpoint endpoint = config.get().endpoint;
+        if (commandSender.isRunning() && !endpoint.equals(previous)) {
+            commandSender.start(endpoint);
+        }
+        showProfiles(mProfiles);
+        mDrawerLayout.closeDrawer(mDrawerList);
+    }
+
+    /**
+     * Called by {@link EditTextDialog} once it saved {@code key}.
+     */
+    void onTextSaved(String key) {
+        if (key.equals(mPreferencesKeys[PROFILE_POSITION])) {
+            saveProfile(GetValue(key, mPreferencesDefaultValues[PROFILE_POSITION]));
+        } else {
+            publishConfig();
+        }
     }
 
     private void selectItem(int position) {
@@ -257,6 +489,13 @@ public class NavigationDrawerActivity extends Activity implements PreferencesAda
                         Integer.parseInt(mPreferencesDefaultValues[position]));
                 editControlMode.show(fm, "dlg_edit_dropdown");
                 break;
+            case 7: //Save Profile
+                EditTextDialog profileDialog = EditTextDialog.newInstance(
+                        mPreferencesText[position],
+                        mPreferencesKeys[position], getResources().getString(R.string.profile_regex),
+                        mPreferencesDefaultValues[position]);
+                profileDialog.show(fm, "dlg_edit_text");
+                break;
             default:
                 setTitle(mPreferencesTitles[position]);
                 break;
@@ -292,56 +531,98 @@ public class NavigationDrawerActivity extends Activity implements PreferencesAda
         mDrawerToggle.onConfigurationChanged(newConfig);
     }
 
+    /* Updates the in-memory settings at once; they are written to disk in the background */
     public static void Save(String tag, String value, String defaultValue){
-        SharedPreferences.Editor editor = prefs.edit();
         if(value == "")
-            editor.putString(tag, defaultValue);
+            settings.putString(tag, defaultValue);
         else
-            editor.putString(tag, value);
-        editor.commit();
+            settings.putString(tag, value);
     }
 
     public static void Save(String tag, int value){
-        SharedPreferences.Editor editor = prefs.edit();
-        editor.putInt(tag, value);
-        editor.commit();
+        settings.putInt(tag, value);
+    }
+
+    /**
+     * Decodes the saved settings into a new {@link PetDotConfig} snapshot and publishes it,
+     * keeping the rates the sender was configured with. Called once at start and after
+     * every saved change; nothing parses settings anywhere else. A running sender applies
+     * it to the stroke in progress and tells the unit about new limits at once.
+     */
+    void publishConfig() {
+        synchronized (config) {
+            config.set(config.get()
+                    .withEndpoint(new Endpoint(
+                            GetValue(mPreferencesKeys[1], mPreferencesDefaultValues[1]),
+                            Endpoint.parsePort(
+                                    GetValue(mPreferencesKeys[2], mPreferencesDefaultValues[2]),
+                                    Endpoint.DEFAULT_PORT)))
+                    .withLimits(MoveLimits.parseOrDefault(
+                            GetValue(mPreferencesKeys[4], mPreferencesDefaultValues[4])))
+                    .withAxes(AxisOrientation.parseOrDefault(
+                            GetValue(mPreferencesKeys[5], mPreferencesDefaultValues[5])))
+                    .withControlMode(GetValue(mPreferencesKeys[6],
+                            Integer.parseInt(mPreferencesDefaultValues[6]))));
+        }
+        // swapped in mid-stream, without reconnecting
+        updateServoTransform();
+        commandSender.configChanged();
+        motionEngine.configChanged();
+    }
+
+    /**
+     * Rebuilds the touch-to-servo transform from the surface size and the configured move
+     * limits and axes. Called when one of those changes, never per touch sample.
+     */
+    void updateServoTransform() {
+        if (mSurfaceWidth <= 0 || mSurfaceHeight <= 0) return;
+        PetDotConfig current = config.get();
+        commandSender.setTransform(
+                new ServoTransform(mSurfaceWidth, mSurfaceHeight, current.limits, current.axes));
+    }
+
+    @Override
+    public void onSurfaceSizeChanged(int width, int height) {
+        mSurfaceWidth = width;
+        mSurfaceHeight = height;
+        updateServoTransform();
+    }
+
+    @Override
+    public void onTouchSample(float x, float y, long eventTime) {
+        // the motion engine has the laser in the random modes
+        if (config.get().controlMode != PetDotConfig.MODE_MANUAL) return;
+        // MotionEvent times are uptimeMillis, which shares its clock with System.nanoTime()
+        commandSender.offerTouch(x, y, eventTime * 1000000L);
     }
 
     public static String GetValue(String tag, String defaultValue){
-        return prefs.getString(tag, defaultValue);
+        return settings.getString(tag, defaultValue);
     }
 
     public static int GetValue(String tag, int defaultValue) {
-        return prefs.getInt(tag, defaultValue);
+        return settings.getInt(tag, defaultValue);
     }
 
     public class DrawingView extends View {
 
         public int width;
         public  int height;
-        private Bitmap mBitmap;
-        private Canvas mCanvas;
-        private Path mPath;
-        private Paint mBitmapPaint;
-        private Paint mRectPaint;
+        private final TrailCanvas mTrail;
         Context context;
-        private Paint circlePaint;
-        private Path circlePath;
+        private boolean mFadeScheduled;
+        private FadeFrameCallback mFadeFrameCallback;
+        private final Runnable mFadeRunnable = new Runnable() {
+            @Override
+            public void run() {
+                onFadeFrame(System.nanoTime());
+            }
+        };
 
-        public DrawingView(Context c) {
+        public DrawingView(Context c, Bitmap.Config config) {
             super(c);
             context = c;
-            mPath = new Path();
-            mBitmapPaint = new Paint(Paint.DITHER_FLAG);
-            circlePaint = new Paint();
-            circlePath = new Path();
-            circlePaint.setAntiAlias(true);
-            circlePaint.setColor(Color.BLUE);
-            circlePaint.setStyle(Paint.Style.STROKE);
-            circlePaint.setStrokeJoin(Paint.Join.MITER);
-            circlePaint.setStrokeWidth(4f);
-            mRectPaint = new Paint();
-            mRectPaint.setStyle(Paint.Style.FILL);
+            mTrail = new TrailCanvas(mPaint, config, metrics);
         }
 
         @Override
@@ -349,54 +630,76 @@ public class NavigationDrawerActivity extends Activity implements PreferencesAda
             super.onSizeChanged(w, h, oldw, oldh);
             width = w;
             height = h;
-            mBitmap = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
-            mCanvas = new Canvas(mBitmap);
-            mRectPaint.setColor(Color.argb(255, 0, 0, 0));
-            mCanvas.drawRect(0, 0, width, height, mRectPaint);
-            mRectPaint.setColor(Color.argb(20,0,0,0));
+            mTrail.setSize(w, h);
+            onSurfaceSizeChanged(w, h);
         }
+
         @Override
-        protected void onDraw(Canvas canvas) {
-            mCanvas.drawRect(0,0,width,height,mRectPaint);
-            canvas.drawBitmap(mBitmap, 0, 0, mBitmapPaint);
-            canvas.drawPath(mPath, mPaint);
-            canvas.drawPath( circlePath,  circlePaint);
-            super.onDraw(canvas);
+        protected void onDetachedFromWindow() {
+            super.onDetachedFromWindow();
+            if (mFadeScheduled) {
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN
+                        && mFadeFrameCallback != null) {
+                    Choreographer.getInstance().removeFrameCallback(mFadeFrameCallback);
+                }
+                removeCallbacks(mFadeRunnable);
+                mFadeScheduled = false;
+            }
         }
 
-        private float mX, mY;
-        private static final float TOUCH_TOLERANCE = 0;
+        private void scheduleFade() {
+            if (mFadeScheduled || !mTrail.isFading()) return;
+            mFadeScheduled = true;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                if (mFadeFrameCallback == null) mFadeFrameCallback = new FadeFrameCallback();
+                Choreographer.getInstance().postFrameCallback(mFadeFrameCallback);
+            } else {
+                postDelayed(mFadeRunnable, 16);
+            }
+        }
 
-        private void touch_start(float x, float y) {
-            mPath.reset();
-            mPath.moveTo(x, y);
-            mX = x;
-            mY = y;
+        private void onFadeFrame(long frameTimeNanos) {
+            mFadeScheduled = false;
+            metrics.fadeFrames.increment();
+            boolean more = mTrail.fade(frameTimeNanos);
+            invalidate(mTrail.getFadeDirty());
+            if (more) scheduleFade();
         }
-        private void touch_move(float x, float y) {
-            float dx = Math.abs(x - mX);
-            float dy = Math.abs(y - mY);
-            if (dx >= TOUCH_TOLERANCE || dy >= TOUCH_TOLERANCE) {
-                mPath.quadTo(mX, mY, (x + mX)/2, (y + mY)/2);
-                mX = x;
-                mY = y;
 
-                circlePath.reset();
-                circlePath.addCircle(mX, mY, 30, Path.Direction.CW);
+        @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+        private class FadeFrameCallback implements Choreographer.FrameCallback {
+            @Override
+            public void doFrame(long frameTimeNanos) {
+                onFadeFrame(frameTimeNanos);
             }
         }
-        private void touch_up() {
-            mPath.lineTo(mX, mY);
-            circlePath.reset();
-            // commit the path to our offscreen
-            mCanvas.drawPath(mPath, mPaint);
-            // kill this so we don't double draw
-            mPath.reset();
-        }
-        private long startTime;
-        private int clickCount = 0;
-        private long duration = 0;
-        static final int MAX_DURATION = 200;
+
+        @Override
+        protected void onDraw(Canvas canvas) {
+            long start = System.nanoTime();
+            mTrail.draw(canvas);
+            super.onDraw(canvas);
+            metrics.renderFrames.increment();
+            metrics.frameTime.recordNanos(System.nanoTime() - start);
+        }
+
+        private void touch_start(float x, float y, long eventTime) {
+            mTrail.strokeStart(x, y);
+            onTouchSample(x, y, eventTime);
+        }
+        private void touch_move(float x, float y, long eventTime) {
+            if (mTrail.strokeMove(x, y)) {
+                onTouchSample(x, y, eventTime);
+            } else {
+                metrics.samplesCoalesced.increment();
+            }
+        }
+        private void touch_up(long eventTime) {
+            mTrail.strokeEnd();
+            onTouchSample(mTrail.getLastX(), mTrail.getLastY(), eventTime);
+        }
+        private final TouchBatch mTouchBatch = new TouchBatch();
+        private final DoubleTapDetector mDoubleTap = new DoubleTapDetector();
         @Override
         public boolean onTouchEvent(MotionEvent event) {
             float x = event.getX();
@@ -404,36 +707,26 @@ public class NavigationDrawerActivity extends Activity implements PreferencesAda
 
             switch (event.getAction()) {
                 case MotionEvent.ACTION_DOWN:
-                    touch_start(x, y);
-                    startTime = System.currentTimeMillis();
-                    clickCount++;
-                    invalidate();
+                    touch_start(x, y, event.getEventTime());
+                    mDoubleTap.onDown(System.currentTimeMillis());
                     break;
                 case MotionEvent.ACTION_MOVE:
-                    touch_move(x, y);
-                    invalidate();
+                    // replay the samples batched since the last event, not just the newest
+                    int samples = mTouchBatch.fill(event);
+                    for (int i = 0; i < samples; i++) {
+                        touch_move(mTouchBatch.getX(i), mTouchBatch.getY(i),
+                                mTouchBatch.getEventTime(i));
+                    }
                     break;
                 case MotionEvent.ACTION_UP:
-                    touch_up();
-                    long time = System.currentTimeMillis() - startTime;
-                    duration=  duration + time;
-                    if(clickCount == 2)
-                    {
-                        if(duration<= MAX_DURATION)
-                        {
-                            mBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-                            mCanvas = new Canvas(mBitmap);
-                            mRectPaint.setColor(Color.argb(255, 0, 0, 0));
-                            mCanvas.drawRect(0, 0, width, height, mRectPaint);
-                            mRectPaint.setColor(Color.argb(20,0,0,0));
-                        }
-                        clickCount = 0;
-                        duration = 0;
-                        break;
+                    touch_up(event.getEventTime());
+                    if (mDoubleTap.onUp(System.currentTimeMillis())) {
+                        mTrail.clear();
                     }
-                    invalidate();
                     break;
             }
+            scheduleFade();
+            invalidate();
 
             return true;
         }
@@ -489,6 +782,7 @@ public class NavigationDrawerActivity extends Activity implements PreferencesAda
                 @Override
                 public void onClick(View v) {
                     Save(key, mEditText.getText().toString(), defaultValue);
+                    ((NavigationDrawerActivity) getActivity()).onTextSaved(key);
                     EditTextDialog.this.Close();
                 }
             });
@@ -530,6 +824,7 @@ public class NavigationDrawerActivity extends Activity implements PreferencesAda
         public boolean onEditorAction(TextView v, int actionId, KeyEvent event) {
             if (EditorInfo.IME_ACTION_DONE == actionId) {
                 Save(key, mEditText.getText().toString(), defaultValue);
+                ((NavigationDrawerActivity) getActivity()).onTextSaved(key);
                 Close();
                 return true;
             }
@@ -589,6 +884,7 @@ public class NavigationDrawerActivity extends Activity implements PreferencesAda
                 @Override
                 public void onClick(View v) {
                     Save(key, mSpinner.getSelectedItemPosition());
+                    ((NavigationDrawerActivity) getActivity()).publishConfig();
                     SpinnerDialog.this.Close();
                 }
             });
@@ -610,6 +906,7 @@ public class NavigationDrawerActivity extends Activity implements PreferencesAda
         public boolean onEditorAction(TextView v, int actionId, KeyEvent event) {
             if (EditorInfo.IME_ACTION_DONE == actionId) {
                 Save(key, mSpinner.getSelectedItemPosition());
+                ((NavigationDrawerActivity) getActivity()).publishConfig();
                 Close();
                 return true;
             }
@@ -623,11 +920,23 @@ public class NavigationDrawerActivity extends Activity implements PreferencesAda
      * ********************************************************************************************
      */
 
-    public static class ConnectButtonFragment extends DialogFragment implements OnEditorActionListener {
+    public static class ConnectButtonFragment extends DialogFragment implements OnEditorActionListener,
+            CommandSender.Listener {
         private boolean connected;
+        /* Why the link is being reopened, null while it is up */
+        private IOException mLinkError;
         private TextView mTextView;
         private Button mConnectButton;
 
+        /* Redraws the link status while connected, a few times a second */
+        private final Runnable mStatusUpdater = new Runnable() {
+            @Override
+            public void run() {
+                if (!connected || mTextView == null) return;
+                showState();
+            }
+        };
+
         public ConnectButtonFragment() { }
 
         public static ConnectButtonFragment newInstance(String message) {
@@ -652,8 +961,19 @@ public class NavigationDrawerActivity extends Activity implements PreferencesAda
                     ConnectButtonFragment.this.Connect();
                 }
             });
+            connected = commandSender.isRunning();
+            if(connected) showState();
+            commandSender.setListener(this);
             return view;
         }
+
+        @Override
+        public void onDestroyView() {
+            mTextView.removeCallbacks(mStatusUpdater);
+            commandSender.setListener(null);
+            super.onDestroyView();
+        }
+
         public void Close(){this.dismiss();}
 
         @Override
@@ -666,11 +986,44 @@ public class NavigationDrawerActivity extends Activity implements PreferencesAda
         }
 
         public void Connect(){
-            connected = !connected;
-            if(connected) {
-                mTextView.setText("Connected");
-                mTextView.setTextColor(Color.GREEN);
+            if(!connected) {
+                commandSender.start(config.get().endpoint);
+            }
+            else {
+                commandSender.stop();
+            }
+            connected = commandSender.isRunning();
+            mLinkError = null;
+            showState();
+        }
+
+        /* Called on the sender thread; a failed link is reopened until Disconnect */
+        @Override
+        public void onLinkStateChanged(final boolean linkConnected, final IOException error) {
+            final View view = getView();
+            if(view == null) return;
+            view.post(new Runnable() {
+                @Override
+                public void run() {
+                    connected = commandSender.isRunning();
+                    mLinkError = linkConnected ? null : error;
+                    showState();
+                }
+            });
+        }
+
+        private void showState(){
+            mTextView.removeCallbacks(mStatusUpdater);
+            if(connected && mLinkError != null) {
+                mTextView.setText("Reconnecting: " + mLinkError.getMessage());
+                mTextView.setTextColor(Color.RED);
+                mConnectButton.setText("Disconnect");
+            }
+            else if(connected) {
+                mTextView.setText(appendLinkStatus(new StringBuilder("Connected\n")));
+                mTextView.setTextColor(getLinkStatusColor());
                 mConnectButton.setText("Disconnect");
+                mTextView.postDelayed(mStatusUpdater, STATUS_INTERVAL_MILLIS);
             }
             else {
                 mTextView.setText("Not Connected");
@@ -687,10 +1040,8 @@ public class NavigationDrawerActivity extends Activity implements PreferencesAda
      */
 
     public static class BoundsFragment extends DialogFragment implements OnEditorActionListener {
-        private static final int max = 180;
-        private static final int min = 0;
-        private static final int stringFormatLength = 3;
-        private static final String stringFormat = "%03d";
+        private static final int max = MoveLimits.MAX;
+        private static final int min = MoveLimits.MIN;
 
         private TextView mTextView;
         private NumberPicker mXMinPicker;
@@ -733,7 +1084,7 @@ public class NavigationDrawerActivity extends Activity implements PreferencesAda
             mSaveButton.setOnClickListener(new View.OnClickListener() {
                 @Override
                 public void onClick(View v) {
-                    Save(key, BoundsFragment.this.getStateString(), defaultValue);
+                    BoundsFragment.this.SaveState();
                     BoundsFragment.this.Close();
                 }
             });
@@ -794,48 +1145,30 @@ public class NavigationDrawerActivity extends Activity implements PreferencesAda
         @Override
         public boolean onEditorAction(TextView v, int actionId, KeyEvent event) {
             if (EditorInfo.IME_ACTION_DONE == actionId) {
-                Save(key, getStateString(), defaultValue);
+                SaveState();
                 Close();
                 return true;
             }
             return false;
         }
 
-        public String getStateString(){
-            String stateString = "";
-            int xmin = mXMinPicker.getValue();
-            int xmax = mXMaxPicker.getValue();
-            int ymin = mYMinPicker.getValue();
-            int ymax = mYMaxPicker.getValue();
-
-            stateString += String.format(stringFormat, xmin);
-            stateString += String.format(stringFormat, xmax);
-            stateString += String.format(stringFormat, ymin);
-            stateString += String.format(stringFormat, ymax);
+        private void SaveState(){
+            Save(key, getStateString(), defaultValue);
+            ((NavigationDrawerActivity) getActivity()).publishConfig();
+        }
 
-            return stateString;
+        public String getStateString(){
+            return new MoveLimits(mXMinPicker.getValue(), mXMaxPicker.getValue(),
+                    mYMinPicker.getValue(), mYMaxPicker.getValue()).toString();
         }
 
         public void setStateFromString(String stateString){
-            if(stateString.length() != stringFormatLength * 4) return;
-            int xmin = min;
-            int xmax = max;
-            int ymin = min;
-            int ymax = max;
-            try{
-                xmin = Integer.valueOf(stateString.substring(0,stringFormatLength));
-                xmax = Integer.valueOf(stateString.substring(stringFormatLength,stringFormatLength*2));
-                ymin = Integer.valueOf(stateString.substring(stringFormatLength*2,stringFormatLength*3));
-                ymax = Integer.valueOf(stateString.substring(stringFormatLength*3,stringFormatLength*4));
-            }catch(NumberFormatException e){return;}
-            if(xmin >= xmax) return;
-            if(ymin >= ymax) return;
-            if(xmin < min || ymin < min || xmax < (min+1) || ymax < (min+1)) return;
-            if(xmin > (max-1) || ymin > (max-1) || xmax > max || ymax > max) return;
-            mXMinPicker.setValue(xmin);
-            mXMaxPicker.setValue(xmax);
-            mYMinPicker.setValue(ymin);
-            mYMaxPicker.setValue(ymax);
+            MoveLimits limits = MoveLimits.parse(stateString);
+            if(limits == null) return;
+            mXMinPicker.setValue(limits.xMin);
+            mXMaxPicker.setValue(limits.xMax);
+            mYMinPicker.setValue(limits.yMin);
+            mYMaxPicker.setValue(limits.yMax);
         }
 
         public void ValueChanged(NumberPicker picker, Integer oldVal, Integer newVal){
@@ -910,7 +1243,7 @@ public class NavigationDrawerActivity extends Activity implements PreferencesAda
             mSaveButton.setOnClickListener(new View.OnClickListener() {
                 @Override
                 public void onClick(View v) {
-                    Save(key, InvertSwapFragment.this.getStateString(), defaultValue);
+                    InvertSwapFragment.this.SaveState();
                     InvertSwapFragment.this.Close();
                 }
             });
@@ -930,34 +1263,29 @@ public class NavigationDrawerActivity extends Activity implements PreferencesAda
         @Override
         public boolean onEditorAction(TextView v, int actionId, KeyEvent event) {
             if (EditorInfo.IME_ACTION_DONE == actionId) {
-                Save(key, getStateString(), defaultValue);
+                SaveState();
                 Close();
                 return true;
             }
             return false;
         }
 
-        public String getStateString(){
-            String stateString = "";
-            boolean invertXChecked = mInvertXCheckbox.isChecked();
-            boolean invertYChecked = mInvertYCheckbox.isChecked();
-            boolean swap = mSwapCheckbox.isChecked();
-
-            stateString += invertXChecked?"1":"0";
-            stateString += invertYChecked?"1":"0";
-            stateString += swap?"1":"0";
+        private void SaveState(){
+            Save(key, getStateString(), defaultValue);
+            ((NavigationDrawerActivity) getActivity()).publishConfig();
+        }
 
-            return stateString;
+        public String getStateString(){
+            return new AxisOrientation(mInvertXCheckbox.isChecked(),
+                    mInvertYCheckbox.isChecked(), mSwapCheckbox.isChecked()).toString();
         }
 
         public void setStateFromString(String stateString){
-            if(stateString.length() != 3) return;
-            for(int i = 0; i < stateString.length();i++)
-                if(!(stateString.charAt(i) == '0' || stateString.charAt(i) == '1'))
-                    return;
-            mInvertXCheckbox.setChecked(stateString.charAt(0) == '1');
-            mInvertXCheckbox.setChecked(stateString.charAt(0) == '1');
-            mSwapCheckbox.setChecked(stateString.charAt(0) == '1');
+            AxisOrientation axes = AxisOrientation.parse(stateString);
+            if(axes == null) return;
+            mInvertXCheckbox.setChecked(axes.invertX);
+            mInvertYCheckbox.setChecked(axes.invertY);
+            mSwapCheckbox.setChecked(axes.swap);
         }
     }
 }
\ No newline at end of file
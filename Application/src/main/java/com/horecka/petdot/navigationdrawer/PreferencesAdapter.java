@@ -22,11 +22,14 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
 
+import java.util.Arrays;
+
 /**
  * Adapter for the preferences data used in our drawer menu,
  */
 public class PreferencesAdapter extends RecyclerView.Adapter<PreferencesAdapter.ViewHolder> {
     private String[] mDataset;
+    private String[] mStatus;
     private OnItemClickListener mListener;
 
     /**
@@ -50,9 +53,31 @@ public class PreferencesAdapter extends RecyclerView.Adapter<PreferencesAdapter.
 
     public PreferencesAdapter(String[] myDataset, OnItemClickListener listener) {
         mDataset = myDataset;
+        mStatus = new String[myDataset.length];
         mListener = listener;
     }
 
+    /**
+     * Replaces the items, keeping the status lines of those still there.
+     */
+    public void setDataset(String[] dataset) {
+        mDataset = dataset;
+        mStatus = Arrays.copyOf(mStatus, dataset.length);
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Sets a live status line shown under an item's title, or clears it with null.
+     *
+     * @return whether the status changed, so the item needs rebinding
+     */
+    public boolean setStatus(int position, String status) {
+        String old = mStatus[position];
+        if (status == null ? old == null : status.equals(old)) return false;
+        mStatus[position] = status;
+        return true;
+    }
+
     @Override
     public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
         LayoutInflater vi = LayoutInflater.from(parent.getContext());
@@ -63,7 +88,11 @@ public class PreferencesAdapter extends RecyclerView.Adapter<PreferencesAdapter.
 
     @Override
     public void onBindViewHolder(ViewHolder holder, final int position) {
-        holder.mTextView.setText(mDataset[position]);
+        if (mStatus[position] == null) {
+            holder.mTextView.setText(mDataset[position]);
+        } else {
+            holder.mTextView.setText(mDataset[position] + "\n" + mStatus[position]);
+        }
         holder.mTextView.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View view) {
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.horecka.petdot.navigationdrawer;
+
+import android.content.SharedPreferences;
+
+import com.horecka.petdot.core.SettingsStore;
+
+import java.util.Map;
+
+/**
+ * Keeps a {@link SettingsStore} in a {@link SharedPreferences} file. Writes use
+ * {@link SharedPreferences.Editor#commit()}, which is fine here because the store only
+ * writes off the UI thread, or on purpose when it is flushed.
+ */
+public class SharedPreferencesBackend implements SettingsStore.Backend {
+    private final SharedPreferences mPreferences;
+
+    public SharedPreferencesBackend(SharedPreferences preferences) {
+        mPreferences = preferences;
+    }
+
+    @Override
+    public Map<String, ?> load() {
+        return mPreferences.getAll();
+    }
+
+    @Override
+    public boolean store(Map<String, Object> settings) {
+        SharedPreferences.Editor editor = mPreferences.edit();
+        for (Map.Entry<String, Object> entry : settings.entrySet()) {
+            Object value = entry.getValue();
+            if (value instanceof Integer) {
+                editor.putInt(entry.getKey(), (Integer) value);
+            } else if (value instanceof String) {
+                editor.putString(entry.getKey(), (String) value);
+            }
+        }
+        return editor.commit();
+    }
+}
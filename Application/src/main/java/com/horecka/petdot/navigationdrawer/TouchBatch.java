@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.horecka.petdot.navigationdrawer;
+
+import android.view.MotionEvent;
+
+/**
+ * Every sample carried by one MotionEvent, oldest first, in reusable primitive arrays.
+ * <p/>
+ * <p>Android batches the intermediate positions of an ACTION_MOVE into the event's
+ * history; getX()/getY() only report the newest one. Copying the history here lets the
+ * renderer and the command pipeline see every sample with its exact event time. The
+ * arrays only grow when a larger batch than ever before shows up, so steady dragging does
+ * not allocate.</p>
+ */
+public class TouchBatch {
+    private float[] mXs = new float[8];
+    private float[] mYs = new float[8];
+    private long[] mTimes = new long[8];
+    private int mSize;
+
+    /**
+     * Replaces the batch with the samples of the first pointer of {@code event}.
+     *
+     * @return the number of samples
+     */
+    public int fill(MotionEvent event) {
+        final int history = event.getHistorySize();
+        ensureCapacity(history + 1);
+        for (int i = 0; i < history; i++) {
+            mXs[i] = event.getHistoricalX(i);
+            mYs[i] = event.getHistoricalY(i);
+            mTimes[i] = event.getHistoricalEventTime(i);
+        }
+        mXs[history] = event.getX();
+        mYs[history] = event.getY();
+        mTimes[history] = event.getEventTime();
+        mSize = history + 1;
+        return mSize;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public float getX(int index) {
+        return mXs[index];
+    }
+
+    public float getY(int index) {
+        return mYs[index];
+    }
+
+    /**
+     * @return the sample's event time in the {@link android.os.SystemClock#uptimeMillis()}
+     * time base
+     */
+    public long getEventTime(int index) {
+        return mTimes[index];
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= mXs.length) return;
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        mXs = new float[size];
+        mYs = new float[size];
+        mTimes = new long[size];
+    }
+}
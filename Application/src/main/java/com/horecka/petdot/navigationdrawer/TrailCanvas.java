@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.horecka.petdot.navigationdrawer;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.Build;
+
+import com.horecka.petdot.core.PetDotMetrics;
+import com.horecka.petdot.core.StrokeSmoother;
+
+/**
+ * The fading laser trail: an offscreen bitmap that strokes are committed into segment by
+ * segment, the live tail from the last committed segment to the finger, and the cursor.
+ * <p/>
+ * <p>The offscreen bitmap is allocated once and then cleared in place; a size change
+ * reuses it whenever it is large enough, or can be reconfigured to the new shape (API 19+),
+ * so neither clearing nor rotating produces a full-screen bitmap worth of garbage.</p>
+ * <p/>
+ * <p>Not thread safe. It is used from the UI thread by {@link NavigationDrawerActivity.DrawingView}
+ * and from the render thread by {@link TrailSurfaceView}.</p>
+ */
+public class TrailCanvas {
+    private static final float TOUCH_TOLERANCE = 0;
+    private static final float CURSOR_RADIUS = 30;
+
+    private final Paint mStrokePaint;
+    private final Bitmap.Config mConfig;
+    private final PetDotMetrics mMetrics;
+    private final Paint mBitmapPaint = new Paint(Paint.DITHER_FLAG);
+    private final Paint mCursorPaint = new Paint();
+    private final Path mTailPath = new Path();
+    private final Path mSegmentPath = new Path();
+    private final Path mCursorPath = new Path();
+    private final RectF mInkBounds = new RectF();
+    private final TrailFade mFade = new TrailFade();
+    private final StrokeSmoother mSmoother = new StrokeSmoother(TOUCH_TOLERANCE);
+
+    private Bitmap mBitmap;
+    private Canvas mCanvas;
+    private int mWidth;
+    private int mHeight;
+
+    /**
+     * @param config pixel format of the offscreen buffer; {@link Bitmap.Config#RGB_565} halves
+     * its memory at the cost of coarser fade steps
+     * @param metrics counts bitmap allocations
+     */
+    public TrailCanvas(Paint strokePaint, Bitmap.Config config, PetDotMetrics metrics) {
+        mStrokePaint = strokePaint;
+        mConfig = config;
+        mMetrics = metrics;
+        mCursorPaint.setAntiAlias(true);
+        mCursorPaint.setColor(Color.BLUE);
+        mCursorPaint.setStyle(Paint.Style.STROKE);
+        mCursorPaint.setStrokeJoin(Paint.Join.MITER);
+        mCursorPaint.setStrokeWidth(4f);
+    }
+
+    public void setSize(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+        if (!reuseBitmap(width, height)) {
+            // drop the old buffer first so both never have to fit in the heap at once
+            mBitmap = null;
+            mBitmap = Bitmap.createBitmap(width, height, mConfig);
+            mMetrics.bitmapAllocations.increment();
+            mMetrics.bitmapBytes.set(mBitmap.getRowBytes() * mBitmap.getHeight());
+            if (mCanvas == null) {
+                mCanvas = new Canvas(mBitmap);
+            } else {
+                mCanvas.setBitmap(mBitmap);
+            }
+        }
+        clear();
+    }
+
+    private boolean reuseBitmap(int width, int height) {
+        if (mBitmap == null) return false;
+        if (mBitmap.getWidth() >= width && mBitmap.getHeight() >= height) return true;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT
+                && Reconfigure.fits(mBitmap, width, height, mConfig)) {
+            // e.g. a rotation: same pixel count, different shape
+            Reconfigure.apply(mBitmap, width, height, mConfig);
+            mCanvas.setBitmap(mBitmap);
+            return true;
+        }
+        return false;
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private static class Reconfigure {
+        static boolean fits(Bitmap bitmap, int width, int height, Bitmap.Config config) {
+            int bytesPerPixel = config == Bitmap.Config.RGB_565 ? 2 : 4;
+            return bitmap.isMutable()
+                    && bitmap.getAllocationByteCount() >= width * height * bytesPerPixel;
+        }
+
+        static void apply(Bitmap bitmap, int width, int height, Bitmap.Config config) {
+            bitmap.reconfigure(width, height, config);
+        }
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Clears the trail to black, in place.
+     */
+    public void clear() {
+        if (mBitmap == null) return;
+        mBitmap.eraseColor(Color.BLACK);
+        mFade.reset();
+    }
+
+    public void strokeStart(float x, float y) {
+        mSmoother.start(x, y);
+        updateTail();
+    }
+
+    /**
+     * @return false if the point was too close to the previous one to be used
+     */
+    public boolean strokeMove(float x, float y) {
+        if (!mSmoother.move(x, y)) return false;
+        // commit each smoothed segment as soon as it is complete so drawing never
+        // re-rasterizes the stroke drawn so far
+        mSegmentPath.reset();
+        mSegmentPath.moveTo(mSmoother.getStartX(), mSmoother.getStartY());
+        mSegmentPath.quadTo(mSmoother.getControlX(), mSmoother.getControlY(),
+                mSmoother.getEndX(), mSmoother.getEndY());
+        commit(mSegmentPath);
+        updateTail();
+        mCursorPath.reset();
+        mCursorPath.addCircle(x, y, CURSOR_RADIUS, Path.Direction.CW);
+        return true;
+    }
+
+    public void strokeEnd() {
+        updateTail();
+        mCursorPath.reset();
+        commit(mTailPath);
+        // kill this so we don't double draw
+        mTailPath.reset();
+    }
+
+    public float getLastX() {
+        return mSmoother.getLastX();
+    }
+
+    public float getLastY() {
+        return mSmoother.getLastY();
+    }
+
+    /* The not yet committed end of the stroke, from the last segment to the finger */
+    private void updateTail() {
+        mTailPath.reset();
+        mTailPath.moveTo(mSmoother.getEndX(), mSmoother.getEndY());
+        mTailPath.lineTo(mSmoother.getLastX(), mSmoother.getLastY());
+    }
+
+    private void commit(Path path) {
+        if (mCanvas == null) return;
+        mCanvas.drawPath(path, mStrokePaint);
+        path.computeBounds(mInkBounds, false);
+        float pad = mStrokePaint.getStrokeWidth() / 2 + 1;
+        mFade.addInk(mInkBounds.left - pad, mInkBounds.top - pad,
+                mInkBounds.right + pad, mInkBounds.bottom + pad, System.nanoTime());
+    }
+
+    /**
+     * @return whether the trail is still fading and needs {@link #fade} calls
+     */
+    public boolean isFading() {
+        return mFade.isActive();
+    }
+
+    /**
+     * Advances the fade to {@code frameTimeNanos}.
+     *
+     * @return whether another fade frame is needed
+     */
+    public boolean fade(long frameTimeNanos) {
+        if (mCanvas == null) return false;
+        return mFade.fade(mCanvas, frameTimeNanos);
+    }
+
+    /**
+     * The area changed by the last fade frame.
+     */
+    public Rect getFadeDirty() {
+        return mFade.getDirty();
+    }
+
+    public void draw(Canvas canvas) {
+        if (mBitmap == null) return;
+        canvas.drawBitmap(mBitmap, 0, 0, mBitmapPaint);
+        canvas.drawPath(mTailPath, mStrokePaint);
+        canvas.drawPath(mCursorPath, mCursorPaint);
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.horecka.petdot.navigationdrawer;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+/**
+ * Time based fade of the trail left in an offscreen bitmap.
+ * <p/>
+ * <p>Each frame darkens only the area that ink was drawn into, by an amount derived from
+ * the time elapsed since the previous frame, so the trail decays at the same speed
+ * whatever the frame rate and keeps decaying while the finger rests. Once that area has
+ * had long enough to decay to black it is filled solid and the fade goes idle until new
+ * ink arrives, so an idle screen costs no fills at all.</p>
+ * <p/>
+ * <p>Times are on the {@link System#nanoTime()} clock, which is also the clock of
+ * Choreographer frame times.</p>
+ */
+public class TrailFade {
+    /** Decay time constant; matches the former alpha 20 fill per frame at 60 fps. */
+    private static final double TIME_CONSTANT_NANOS = 204e6;
+    /** After this long without new ink the trail is invisible and is cleared outright. */
+    private static final long FADE_OUT_NANOS = 1200000000L;
+
+    private final Paint mPaint = new Paint();
+    private final Rect mDirty = new Rect();
+    private long mLastFadeNanos;
+    private long mLastInkNanos;
+    private boolean mActive;
+
+    public TrailFade() {
+        mPaint.setStyle(Paint.Style.FILL);
+    }
+
+    /**
+     * Records that ink was drawn inside the given bounds.
+     */
+    public void addInk(float left, float top, float right, float bottom, long nowNanos) {
+        if (!mActive) {
+            mDirty.setEmpty();
+            mLastFadeNanos = nowNanos;
+            mActive = true;
+        }
+        mDirty.union((int) Math.floor(left), (int) Math.floor(top),
+                (int) Math.ceil(right), (int) Math.ceil(bottom));
+        mLastInkNanos = nowNanos;
+    }
+
+    public boolean isActive() {
+        return mActive;
+    }
+
+    /**
+     * The area touched by the fade, valid until the next {@link #addInk}.
+     */
+    public Rect getDirty() {
+        return mDirty;
+    }
+
+    /**
+     * Darkens the inked area of {@code canvas} for a frame at {@code frameTimeNanos}.
+     *
+     * @return whether the fade needs another frame
+     */
+    public boolean fade(Canvas canvas, long frameTimeNanos) {
+        if (!mActive) return false;
+        if (frameTimeNanos - mLastInkNanos >= FADE_OUT_NANOS) {
+            mPaint.setColor(Color.BLACK);
+            canvas.drawRect(mDirty, mPaint);
+            mActive = false;
+            return false;
+        }
+        long elapsed = frameTimeNanos - mLastFadeNanos;
+        int alpha = (int) (255 * (1 - Math.exp(-elapsed / TIME_CONSTANT_NANOS)));
+        // below one step of alpha nothing would change; let the time accumulate instead
+        if (alpha > 0) {
+            mPaint.setColor(Color.argb(alpha, 0, 0, 0));
+            canvas.drawRect(mDirty, mPaint);
+            mLastFadeNanos = frameTimeNanos;
+        }
+        return true;
+    }
+
+    /**
+     * Forgets all ink, e.g. after the buffer was cleared.
+     */
+    public void reset() {
+        mActive = false;
+        mDirty.setEmpty();
+    }
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.horecka.petdot.navigationdrawer;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.view.MotionEvent;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+
+import com.horecka.petdot.core.DoubleTapDetector;
+import com.horecka.petdot.core.PetDotMetrics;
+import com.horecka.petdot.core.TouchSampleRing;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Control surface that draws the laser trail on its own render thread.
+ * <p/>
+ * <p>The UI thread only harvests touch samples and hands them over through a lock-free
+ * {@link TouchSampleRing}; committing strokes, fading and compositing all happen on the
+ * render thread. Drawer animations and dialog inflation on the UI thread therefore no
+ * longer delay the trail. The render thread sleeps whenever there are no new samples and
+ * the trail has faded out.</p>
+ * <p/>
+ * <p>If the render thread stalls long enough for the ring to fill, samples are dropped and
+ * counted, but never so that the trail's strokes come apart: a stroke whose start was
+ * dropped starts at its first sample that got through, and a dropped end is handed over
+ * through a flag the render thread checks once it has drained what came before.</p>
+ */
+public class TrailSurfaceView extends SurfaceView implements SurfaceHolder.Callback {
+
+    /**
+     * Receives the surface size and every touch sample. Called on the UI thread.
+     */
+    public interface Listener {
+        public void onSurfaceSizeChanged(int width, int height);
+        public void onTouchSample(float x, float y, long eventTime);
+    }
+
+    private static final int RING_CAPACITY = 512;
+    /** How long the render thread waits for a surface it could not lock, about a frame. */
+    private static final long NO_SURFACE_WAIT_NANOS = 16000000L;
+
+    private final TrailCanvas mTrail;
+    private final PetDotMetrics mMetrics;
+    private final Listener mListener;
+    private final TouchBatch mTouchBatch = new TouchBatch();
+    private final DoubleTapDetector mDoubleTap = new DoubleTapDetector();
+    private final TouchSampleRing mSamples = new TouchSampleRing(RING_CAPACITY);
+
+    private RenderThread mRenderThread;
+    private int mPendingWidth;
+    private int mPendingHeight;
+    private volatile boolean mSizeChanged;
+    private volatile boolean mClearRequested;
+    /** The current stroke's end was dropped; set by the UI thread, cleared by the renderer. */
+    private volatile boolean mUpPending;
+    /** The current stroke's start was dropped. UI thread only. */
+    private boolean mDownDropped;
+
+    public TrailSurfaceView(Context context, Paint strokePaint, Bitmap.Config config,
+                            PetDotMetrics metrics, Listener listener) {
+        super(context);
+        mTrail = new TrailCanvas(strokePaint, config, metrics);
+        mMetrics = metrics;
+        mListener = listener;
+        getHolder().addCallback(this);
+    }
+
+    @Override
+    public void surfaceCreated(SurfaceHolder holder) {
+        mRenderThread = new RenderThread(holder);
+        mRenderThread.start();
+    }
+
+    @Override
+    public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+        synchronized (this) {
+            mPendingWidth = width;
+            mPendingHeight = height;
+        }
+        mSizeChanged = true;
+        wakeRenderThread();
+        mListener.onSurfaceSizeChanged(width, height);
+    }
+
+    @Override
+    public void surfaceDestroyed(SurfaceHolder holder) {
+        // the surface must not be touched once this returns, so wait for the thread to exit
+        RenderThread thread = mRenderThread;
+        mRenderThread = null;
+        thread.quit();
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        switch (event.getAction()) {
+            case MotionEvent.ACTION_DOWN:
+                publish(TouchSampleRing.ACTION_DOWN, event.getX(), event.getY(),
+                        event.getEventTime());
+                mDoubleTap.onDown(System.currentTimeMillis());
+                break;
+            case MotionEvent.ACTION_MOVE:
+                int samples = mTouchBatch.fill(event);
+                for (int i = 0; i < samples; i++) {
+                    publish(TouchSampleRing.ACTION_MOVE, mTouchBatch.getX(i),
+                            mTouchBatch.getY(i), mTouchBatch.getEventTime(i));
+                }
+                break;
+            case MotionEvent.ACTION_UP:
+                publish(TouchSampleRing.ACTION_UP, event.getX(), event.getY(),
+                        event.getEventTime());
+                if (mDoubleTap.onUp(System.currentTimeMillis())) mClearRequested = true;
+                break;
+        }
+        wakeRenderThread();
+        return true;
+    }
+
+    private void publish(int action, float x, float y, long eventTime) {
+        mListener.onTouchSample(x, y, eventTime);
+        if (mUpPending) {
+            // nothing may overtake the end of the last stroke; a stroke begun meanwhile
+            // starts at its first sample after it
+            mMetrics.renderSamplesDropped.increment();
+            if (action == TouchSampleRing.ACTION_DOWN) mDownDropped = true;
+            return;
+        }
+        if (mDownDropped) {
+            if (action == TouchSampleRing.ACTION_UP) {
+                // the stroke never started on the render thread, so there is nothing to end
+                mDownDropped = false;
+                return;
+            }
+            // rather than extending the previous stroke
+            action = TouchSampleRing.ACTION_DOWN;
+        }
+        if (mSamples.offer(action, x, y, eventTime)) {
+            mDownDropped = false;
+        } else {
+            drop(action);
+        }
+    }
+
+    private void drop(int action) {
+        mMetrics.renderSamplesDropped.increment();
+        if (action == TouchSampleRing.ACTION_DOWN) {
+            mDownDropped = true;
+        } else if (action == TouchSampleRing.ACTION_UP) {
+            mUpPending = true;
+        }
+    }
+
+    private void wakeRenderThread() {
+        RenderThread thread = mRenderThread;
+        if (thread != null && thread.mParked) LockSupport.unpark(thread);
+    }
+
+    private class RenderThread extends Thread {
+        volatile boolean mParked;
+        private volatile boolean mQuit;
+        private final SurfaceHolder mHolder;
+        private final int[] mActions = new int[RING_CAPACITY];
+        private final float[] mXs = new float[RING_CAPACITY];
+        private final float[] mYs = new float[RING_CAPACITY];
+        private final long[] mTimes = new long[RING_CAPACITY];
+
+        RenderThread(SurfaceHolder holder) {
+            super("PetDot-render");
+            mHolder = holder;
+        }
+
+        void quit() {
+            mQuit = true;
+            LockSupport.unpark(this);
+        }
+
+        @Override
+        public void run() {
+            boolean dirty = true;
+            while (!mQuit) {
+                if (mSizeChanged) {
+                    mSizeChanged = false;
+                    int width, height;
+                    synchronized (TrailSurfaceView.this) {
+                        width = mPendingWidth;
+                        height = mPendingHeight;
+                    }
+                    mTrail.setSize(width, height);
+                    dirty = true;
+                }
+                if (mClearRequested) {
+                    mClearRequested = false;
+                    mTrail.clear();
+                    dirty = true;
+                }
+                int count = mSamples.drainTo(mActions, mXs, mYs, mTimes, mActions.length);
+                for (int i = 0; i < count; i++) {
+                    applySample(mActions[i], mXs[i], mYs[i]);
+                }
+                // everything offered before the end was dropped is in the ring, and nothing
+                // is offered after it until this is cleared
+                if (mUpPending && mSamples.isEmpty()) {
+                    mTrail.strokeEnd();
+                    mUpPending = false;
+                    dirty = true;
+                }
+                boolean fading = mTrail.isFading();
+                if (fading) {
+                    mTrail.fade(System.nanoTime());
+                    mMetrics.fadeFrames.increment();
+                }
+                if (count > 0 || fading || dirty) {
+                    // unlockCanvasAndPost paces this loop to the display
+                    if (drawFrame()) {
+                        dirty = false;
+                    } else {
+                        // nothing paces it without a surface; draw it all once there is one
+                        dirty = true;
+                        LockSupport.parkNanos(this, NO_SURFACE_WAIT_NANOS);
+                    }
+                } else {
+                    waitForWork();
+                }
+            }
+        }
+
+        private void applySample(int action, float x, float y) {
+            switch (action) {
+                case TouchSampleRing.ACTION_DOWN:
+                    mTrail.strokeStart(x, y);
+                    break;
+                case TouchSampleRing.ACTION_MOVE:
+                    mTrail.strokeMove(x, y);
+                    break;
+                case TouchSampleRing.ACTION_UP:
+                    mTrail.strokeEnd();
+                    break;
+            }
+        }
+
+        /**
+         * @return false if the surface was not ready to draw on
+         */
+        private boolean drawFrame() {
+            Canvas canvas = mHolder.lockCanvas();
+            if (canvas == null) return false;
+            long start = System.nanoTime();
+            try {
+                mTrail.draw(canvas);
+            } finally {
+                mHolder.unlockCanvasAndPost(canvas);
+            }
+            mMetrics.renderFrames.increment();
+            mMetrics.frameTime.recordNanos(System.nanoTime() - start);
+            return true;
+        }
+
+        private void waitForWork() {
+            mParked = true;
+            if (mSamples.isEmpty() && !mUpPending && !mSizeChanged && !mClearRequested
+                    && !mQuit) {
+                LockSupport.park(this);
+            }
+            mParked = false;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.horecka.petdot.benchmark;
+
+import com.horecka.petdot.core.CommandDecoder;
+import com.horecka.petdot.core.CommandEncoder;
+import com.horecka.petdot.core.CommandProtocol;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+
+/**
+ * A unit on loopback that answers the sender like a real one: it welcomes its greeting,
+ * answers heartbeats, confirms limits and acknowledges every move and trajectory packet,
+ * so the sender runs in session the way it does while the user drags.
+ * <p/>
+ * <p>It talks to the first address it hears from over a connected channel, which unlike
+ * receive() does not allocate a sender address per datagram, so it does not add garbage
+ * of its own to what a benchmark measures.</p>
+ */
+final class LoopbackUnit extends Thread {
+    private final DatagramChannel mChannel = DatagramChannel.open();
+    private final ByteBuffer mReceived =
+            ByteBuffer.allocateDirect(CommandProtocol.MAX_PACKET_SIZE);
+    private final ByteBuffer mReply =
+            ByteBuffer.allocateDirect(CommandProtocol.MAX_PACKET_SIZE);
+    private final CommandDecoder mDecoder = new CommandDecoder();
+    private boolean mHasSession;
+    private long mSession;
+    private boolean mStarted;
+    private int mLastSequence;
+    private volatile long mGreetings;
+    private volatile long mPacketsAcked;
+
+    LoopbackUnit() throws IOException {
+        super("PetDot-unit");
+        setDaemon(true);
+        mChannel.socket().bind(new InetSocketAddress("127.0.0.1", 0));
+    }
+
+    int getPort() {
+        return mChannel.socket().getLocalPort();
+    }
+
+    /** Greetings received; the sender only sends them while it is out of session. */
+    long getGreetings() {
+        return mGreetings;
+    }
+
+    long getPacketsAcked() {
+        return mPacketsAcked;
+    }
+
+    @Override
+    public void run() {
+        try {
+            SocketAddress phone = mChannel.receive(mReceived);
+            mChannel.connect(phone);
+            while (true) {
+                mReceived.flip();
+                if (mDecoder.decode(mReceived)) {
+                    mReply.clear();
+                    if (reply()) {
+                        mReply.flip();
+                        mChannel.write(mReply);
+                    }
+                }
+                mReceived.clear();
+                mChannel.read(mReceived);
+            }
+        } catch (ClosedChannelException e) {
+            // closed by close()
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /* Encodes the answer to the decoded packet into mReply, if it gets one */
+    private boolean reply() {
+        switch (mDecoder.getType()) {
+            case CommandProtocol.TYPE_MOVE:
+            case CommandProtocol.TYPE_TRAJECTORY:
+                mStarted = true;
+                mLastSequence = mDecoder.getSequence();
+                CommandEncoder.encodeAck(mReply, mLastSequence);
+                mPacketsAcked++;
+                return true;
+            case CommandProtocol.TYPE_PING:
+                CommandEncoder.encodePong(mReply, mDecoder.getSequence(),
+                        mDecoder.getTimestamp());
+                return true;
+            case CommandProtocol.TYPE_HELLO:
+                mGreetings++;
+                boolean resumed = mHasSession && mDecoder.getSession() == mSession;
+                if (!resumed) {
+                    mHasSession = true;
+                    mSession = mDecoder.getSession();
+                    mStarted = false;
+                }
+                CommandEncoder.encodeWelcome(mReply, mLastSequence, mSession,
+                        resumed && mStarted);
+                return true;
+            case CommandProtocol.TYPE_LIMITS:
+                CommandEncoder.encodeLimitsAck(mReply, mDecoder.getSequence());
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    void close() throws IOException {
+        mChannel.close();
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.horecka.petdot.benchmark;
+
+import com.horecka.petdot.core.LatencyHistogram;
+import com.horecka.petdot.core.StripedCounter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cost of updating a metric from the hot path, alone and with the UI, sender and render
+ * threads updating the same metric at once.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MetricsBenchmark {
+    private final StripedCounter mCounter = new StripedCounter();
+    private final AtomicLong mAtomic = new AtomicLong();
+    private final LatencyHistogram mHistogram = new LatencyHistogram();
+    private long mValue;
+
+    @Benchmark
+    @Group("counter")
+    public void counter() {
+        mCounter.increment();
+    }
+
+    @Benchmark
+    @Group("counterShared")
+    @GroupThreads(3)
+    public void counterShared() {
+        mCounter.increment();
+    }
+
+    @Benchmark
+    @Group("atomicShared")
+    @GroupThreads(3)
+    public long atomicShared() {
+        return mAtomic.incrementAndGet();
+    }
+
+    @Benchmark
+    @Group("histogram")
+    public void histogram() {
+        mHistogram.recordMicros(mValue++ & 0xffff);
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.horecka.petdot.benchmark;
+
+import com.horecka.petdot.core.AxisOrientation;
+import com.horecka.petdot.core.CommandDecoder;
+import com.horecka.petdot.core.CommandEncoder;
+import com.horecka.petdot.core.CommandProtocol;
+import com.horecka.petdot.core.MoveLimits;
+import com.horecka.petdot.core.ServoTransform;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding move and trajectory packets of {@code batch} samples taken from a
+ * drag.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PacketEncodeBenchmark {
+    @Param({"1", "8", "32"})
+    public int batch;
+
+    private final int[] mPans = new int[Samples.COUNT + CommandProtocol.MAX_SAMPLES];
+    private final int[] mTilts = new int[Samples.COUNT + CommandProtocol.MAX_SAMPLES];
+    private final long[] mTimes = new long[Samples.COUNT + CommandProtocol.MAX_SAMPLES];
+    private final ByteBuffer mBuffer =
+            ByteBuffer.allocateDirect(CommandProtocol.MAX_TRAJECTORY_SIZE);
+    private final ByteBuffer mEncoded = ByteBuffer.allocateDirect(CommandProtocol.MAX_MOVE_SIZE);
+    private final ByteBuffer mEncodedTrajectory =
+            ByteBuffer.allocateDirect(CommandProtocol.MAX_TRAJECTORY_SIZE);
+    private final CommandDecoder mDecoder = new CommandDecoder();
+    private int mSequence;
+
+    @Setup
+    public void setUp() {
+        Samples samples = new Samples();
+        ServoTransform transform = new ServoTransform(Samples.WIDTH, Samples.HEIGHT,
+                MoveLimits.DEFAULT, AxisOrientation.DEFAULT);
+        for (int i = 0; i < mPans.length; i++) {
+            int s = i & Samples.MASK;
+            mPans[i] = transform.mapPan(samples.xs[s], samples.ys[s]);
+            mTilts[i] = transform.mapTilt(samples.xs[s], samples.ys[s]);
+            mTimes[i] = i * 8333333L;
+        }
+        CommandEncoder.encodeMove(mEncoded, 0, mPans, mTilts, 0, batch);
+        mEncoded.flip();
+        CommandEncoder.encodeTrajectory(mEncodedTrajectory, 0, 8, mPans, mTilts, mTimes, 0, batch);
+        mEncodedTrajectory.flip();
+    }
+
+    @Benchmark
+    public int encode() {
+        int offset = mSequence & Samples.MASK;
+        mBuffer.clear();
+        CommandEncoder.encodeMove(mBuffer, mSequence++, mPans, mTilts, offset, batch);
+        return mBuffer.position();
+    }
+
+    @Benchmark
+    public boolean decode() {
+        mEncoded.rewind();
+        return mDecoder.decode(mEncoded);
+    }
+
+    @Benchmark
+    public int encodeTrajectory() {
+        int offset = mSequence & Samples.MASK;
+        mBuffer.clear();
+        CommandEncoder.encodeTrajectory(mBuffer, mSequence++, 8, mPans, mTilts, mTimes,
+                offset, batch);
+        return mBuffer.position();
+    }
+
+    @Benchmark
+    public boolean decodeTrajectory() {
+        mEncodedTrajectory.rewind();
+        return mDecoder.decode(mEncodedTrajectory);
+    }
+}
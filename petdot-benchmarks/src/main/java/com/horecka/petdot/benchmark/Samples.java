@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.horecka.petdot.benchmark;
+
+import java.util.Random;
+
+/**
+ * A recorded-looking drag across a phone sized surface, shared by the benchmarks so they
+ * all work on the same input.
+ */
+final class Samples {
+    static final int WIDTH = 1080;
+    static final int HEIGHT = 1920;
+    /** Power of two so benchmarks can wrap with a mask. */
+    static final int COUNT = 1024;
+    static final int MASK = COUNT - 1;
+
+    final float[] xs = new float[COUNT];
+    final float[] ys = new float[COUNT];
+    final long[] times = new long[COUNT];
+
+    Samples() {
+        Random random = new Random(11235);
+        float x = WIDTH / 2;
+        float y = HEIGHT / 2;
+        float vx = 0;
+        float vy = 0;
+        long time = 0;
+        for (int i = 0; i < COUNT; i++) {
+            // a finger moves smoothly, so integrate a small random acceleration
+            vx = clamp(vx + (random.nextFloat() - 0.5f) * 6, -40, 40);
+            vy = clamp(vy + (random.nextFloat() - 0.5f) * 6, -40, 40);
+            x = clamp(x + vx, 0, WIDTH);
+            y = clamp(y + vy, 0, HEIGHT);
+            xs[i] = x;
+            ys[i] = y;
+            time += 8333333; // 120 Hz
+            times[i] = time;
+        }
+    }
+
+    private static float clamp(float value, float min, float max) {
+        return value < min ? min : (value > max ? max : value);
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.horecka.petdot.benchmark;
+
+import com.horecka.petdot.core.AxisOrientation;
+import com.horecka.petdot.core.CommandSender;
+import com.horecka.petdot.core.MoveLimits;
+import com.horecka.petdot.core.ServoTransform;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Fails if the sender thread allocates anything while the user drags.
+ * <p/>
+ * <p>Drives a live {@link CommandSender} against a {@link LoopbackUnit} the way
+ * {@link SendPathBenchmark} does, and reads the bytes the sender thread has allocated from
+ * {@code com.sun.management.ThreadMXBean} before and after a stretch of steady dragging,
+ * once warm-up has settled.
+ * Unlike the benchmark's gc profiler figure, which someone has to read, this exits with a
+ * non-zero status on any growth, so {@code ./gradlew :petdot-benchmarks:check} catches a
+ * regression. It also fails if the sender fell out of session on the way, since the
+ * figure would then not be for the steady state.</p>
+ * <p/>
+ * <p>Run it with {@code -Xint}, as the {@code allocationCheck} task does. Compiled code
+ * has escape analysis remove allocations that ART would still make on the phone, and the
+ * JIT's own deoptimizations allocate on the thread they happen on.</p>
+ */
+public final class SendPathAllocationCheck {
+    /**
+     * Warm-up goes on until a whole round passes without allocating; code that runs for the
+     * first time, e.g. the first acknowledgement, resolves its constants once.
+     */
+    private static final long WARM_UP_ROUND_NANOS = 1000000000L;
+    private static final int MAX_WARM_UP_ROUNDS = 20;
+    private static final long MEASURE_NANOS = 5000000000L;
+    /** Faster than any touch screen, so that full batches and coalescing are covered too. */
+    private static final long SAMPLE_INTERVAL_NANOS = 1000000L;
+    private static final String SENDER_THREAD = "PetDot-sender";
+
+    private SendPathAllocationCheck() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            fail("this JVM does not count allocations per thread");
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        Samples samples = new Samples();
+        LoopbackUnit unit = new LoopbackUnit();
+        unit.start();
+        CommandSender sender = new CommandSender();
+        sender.setTransform(new ServoTransform(Samples.WIDTH, Samples.HEIGHT,
+                MoveLimits.DEFAULT, AxisOrientation.DEFAULT));
+        sender.start("127.0.0.1", unit.getPort());
+        try {
+            int index = drag(sender, samples, 0, WARM_UP_ROUND_NANOS);
+            long senderId = findThread(SENDER_THREAD);
+            int rounds = 1;
+            long settled;
+            do {
+                if (rounds++ == MAX_WARM_UP_ROUNDS) {
+                    fail("the sender thread was still allocating after " + MAX_WARM_UP_ROUNDS
+                            + " seconds");
+                }
+                settled = threads.getThreadAllocatedBytes(senderId);
+                index = drag(sender, samples, index, WARM_UP_ROUND_NANOS);
+            } while (threads.getThreadAllocatedBytes(senderId) != settled);
+            long greetings = unit.getGreetings();
+            long acked = unit.getPacketsAcked();
+            long before = threads.getThreadAllocatedBytes(senderId);
+
+            drag(sender, samples, index, MEASURE_NANOS);
+
+            long allocated = threads.getThreadAllocatedBytes(senderId) - before;
+            acked = unit.getPacketsAcked() - acked;
+            if (greetings == 0 || unit.getGreetings() != greetings) {
+                fail("the sender was not in session with the unit throughout");
+            }
+            if (acked == 0) fail("no packets were acknowledged");
+            if (allocated != 0) {
+                fail("the sender thread allocated " + allocated + " bytes over " + acked
+                        + " packets");
+            }
+            System.out.println("SendPathAllocationCheck: 0 bytes allocated over " + acked
+                    + " packets");
+        } finally {
+            sender.stop();
+            unit.close();
+        }
+    }
+
+    /* Offers samples at a steady pace for the given time, returns the next sample index */
+    private static int drag(CommandSender sender, Samples samples, int index, long nanos) {
+        long next = System.nanoTime();
+        long end = next + nanos;
+        while (next - end < 0) {
+            int i = index++ & Samples.MASK;
+            sender.offerTouch(samples.xs[i], samples.ys[i], System.nanoTime());
+            next += SAMPLE_INTERVAL_NANOS;
+            long wait = next - System.nanoTime();
+            if (wait > 0) LockSupport.parkNanos(wait);
+        }
+        return index;
+    }
+
+    private static long findThread(String name) {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (name.equals(thread.getName())) return thread.getId();
+        }
+        fail("no " + name + " thread");
+        return -1;
+    }
+
+    private static void fail(String message) {
+        System.err.println("SendPathAllocationCheck failed: " + message);
+        System.exit(1);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.horecka.petdot.benchmark;
+
+import com.horecka.petdot.core.AxisOrientation;
+import com.horecka.petdot.core.CommandSender;
+import com.horecka.petdot.core.MoveLimits;
+import com.horecka.petdot.core.ServoTransform;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A steady drag through the whole network layer: samples are offered the way
+ * {@code DrawingView} offers them, and a live sender thread batches, encodes and writes
+ * them over loopback to a {@link LoopbackUnit} that answers like a real one.
+ * <p/>
+ * <p>This measures the allocations of the command path; {@link SendPathAllocationCheck}
+ * is the pass/fail check for it. The gc profiler's
+ * gc.alloc.rate.norm counts what every thread allocated, the sender's and the unit's
+ * included, per offered sample; in steady state it must be 0. The unit is kept
+ * allocation free so anything it reports belongs to the sender.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SendPathBenchmark {
+    private final Samples mSamples = new Samples();
+    private final CommandSender mSender = new CommandSender();
+    private LoopbackUnit mUnit;
+    private int mIndex;
+
+    @Setup
+    public void setUp() throws IOException {
+        mUnit = new LoopbackUnit();
+        mUnit.start();
+        mSender.setTransform(new ServoTransform(Samples.WIDTH, Samples.HEIGHT,
+                MoveLimits.DEFAULT, AxisOrientation.DEFAULT));
+        mSender.start("127.0.0.1", mUnit.getPort());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        mSender.stop();
+        mUnit.close();
+    }
+
+    @Benchmark
+    public void offerSample() {
+        int i = mIndex++ & Samples.MASK;
+        mSender.offerTouch(mSamples.xs[i], mSamples.ys[i], System.nanoTime());
+    }
+}
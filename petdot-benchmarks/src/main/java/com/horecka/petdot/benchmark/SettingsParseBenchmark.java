@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.horecka.petdot.benchmark;
+
+import com.horecka.petdot.core.AxisOrientation;
+import com.horecka.petdot.core.MoveLimits;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding the persisted Move Limits and Invert/Swap strings. Not on the per-sample path
+ * any more, but it runs on every settings change and must stay cheap.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SettingsParseBenchmark {
+    public String moveLimits = "020160010170";
+    public String invertSwap = "101";
+
+    @Benchmark
+    public MoveLimits parseMoveLimits() {
+        return MoveLimits.parse(moveLimits);
+    }
+
+    @Benchmark
+    public AxisOrientation parseInvertSwap() {
+        return AxisOrientation.parse(invertSwap);
+    }
+}
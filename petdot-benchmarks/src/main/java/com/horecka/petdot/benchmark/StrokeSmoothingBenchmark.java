@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.horecka.petdot.benchmark;
+
+import com.horecka.petdot.core.StrokeSmoother;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Midpoint smoothing of one touch sample into a quadratic segment.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class StrokeSmoothingBenchmark {
+    private final Samples mSamples = new Samples();
+    private final StrokeSmoother mSmoother = new StrokeSmoother(0);
+    private int mIndex;
+
+    @Setup
+    public void setUp() {
+        mSmoother.start(mSamples.xs[0], mSamples.ys[0]);
+    }
+
+    @Benchmark
+    public float smoothSample() {
+        int i = mIndex++ & Samples.MASK;
+        mSmoother.move(mSamples.xs[i], mSamples.ys[i]);
+        return mSmoother.getEndX() + mSmoother.getControlY();
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.horecka.petdot.benchmark;
+
+import com.horecka.petdot.core.AxisOrientation;
+import com.horecka.petdot.core.MoveLimits;
+import com.horecka.petdot.core.ServoTransform;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapping one touch sample to servo angles, for each axis orientation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TransformBenchmark {
+    @Param({"000", "110", "001"})
+    public String invertSwap;
+
+    private final Samples mSamples = new Samples();
+    private ServoTransform mTransform;
+    private int mIndex;
+
+    @Setup
+    public void setUp() {
+        mTransform = new ServoTransform(Samples.WIDTH, Samples.HEIGHT,
+                MoveLimits.parse("020160010170"), AxisOrientation.parse(invertSwap));
+    }
+
+    @Benchmark
+    public int mapSample() {
+        int i = mIndex++ & Samples.MASK;
+        float x = mSamples.xs[i];
+        float y = mSamples.ys[i];
+        return mTransform.mapPan(x, y) + (mTransform.mapTilt(x, y) << 8);
+    }
+}
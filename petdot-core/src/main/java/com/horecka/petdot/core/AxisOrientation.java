@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.horecka.petdot.core;
+
+/**
+ * Which servo axes are inverted and whether the screen axes are swapped.
+ * <p/>
+ * <p>Persisted as three '0'/'1' flags in the order invert x, invert y, swap, e.g.
+ * {@code "000"}.</p>
+ */
+public final class AxisOrientation {
+    public static final AxisOrientation DEFAULT = new AxisOrientation(false, false, false);
+
+    public final boolean invertX;
+    public final boolean invertY;
+    public final boolean swap;
+
+    public AxisOrientation(boolean invertX, boolean invertY, boolean swap) {
+        this.invertX = invertX;
+        this.invertY = invertY;
+        this.swap = swap;
+    }
+
+    /**
+     * @return the orientation, or null if the string is malformed
+     */
+    public static AxisOrientation parse(String stateString) {
+        if (stateString == null || stateString.length() != 3) return null;
+        for (int i = 0; i < 3; i++) {
+            char c = stateString.charAt(i);
+            if (c != '0' && c != '1') return null;
+        }
+        return new AxisOrientation(stateString.charAt(0) == '1',
+                stateString.charAt(1) == '1', stateString.charAt(2) == '1');
+    }
+
+    /**
+     * @return the orientation, or {@link #DEFAULT} if the string is malformed
+     */
+    public static AxisOrientation parseOrDefault(String stateString) {
+        AxisOrientation orientation = parse(stateString);
+        return orientation == null ? DEFAULT : orientation;
+    }
+
+    @Override
+    public String toString() {
+        return (invertX ? "1" : "0") + (invertY ? "1" : "0") + (swap ? "1" : "0");
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof AxisOrientation)) return false;
+        AxisOrientation other = (AxisOrientation) o;
+        return invertX == other.invertX && invertY == other.invertY && swap == other.swap;
+    }
+
+    @Override
+    public int hashCode() {
+        return (invertX ? 4 : 0) | (invertY ? 2 : 0) | (swap ? 1 : 0);
+    }
+}
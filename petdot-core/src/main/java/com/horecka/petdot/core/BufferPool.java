@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.horecka.petdot.core;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A small pool of equally sized direct {@link ByteBuffer}s for datagrams.
+ * <p/>
+ * <p>Direct buffers are written to and read from a socket without the intermediate copy
+ * a heap buffer needs, but they are expensive to allocate and only freed after a
+ * finalizer has run. Packets are therefore encoded straight into a pooled buffer that is
+ * handed back once the datagram is written, and in steady state nothing is allocated.
+ * The pool only allocates while it is empty, which {@code allocations} counts.</p>
+ */
+public class BufferPool {
+    private final int mBufferSize;
+    private final ByteBuffer[] mFree;
+    private final StripedCounter mAllocations;
+    private int mFreeCount;
+
+    /**
+     * @param maxPooled buffers kept for reuse; more may be out at a time, released extras
+     * are left to the garbage collector
+     */
+    public BufferPool(int bufferSize, int maxPooled, StripedCounter allocations) {
+        mBufferSize = bufferSize;
+        mFree = new ByteBuffer[maxPooled];
+        mAllocations = allocations;
+    }
+
+    /**
+     * @return a cleared buffer of the pool's size
+     */
+    public synchronized ByteBuffer acquire() {
+        if (mFreeCount == 0) {
+            mAllocations.increment();
+            return ByteBuffer.allocateDirect(mBufferSize);
+        }
+        ByteBuffer buffer = mFree[--mFreeCount];
+        mFree[mFreeCount] = null;
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer from {@link #acquire()}. It must not be used afterwards.
+     */
+    public synchronized void release(ByteBuffer buffer) {
+        if (buffer.capacity() != mBufferSize) {
+            throw new IllegalArgumentException("not from this pool: " + buffer);
+        }
+        if (mFreeCount < mFree.length) mFree[mFreeCount++] = buffer;
+    }
+
+    public int getBufferSize() {
+        return mBufferSize;
+    }
+}
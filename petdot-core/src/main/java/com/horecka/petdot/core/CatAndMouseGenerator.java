@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.horecka.petdot.core;
+
+import java.util.Random;
+
+/**
+ * "Random (Cat and Mouse)": the dot darts to a spot, freezes there for a moment and darts
+ * off again, mostly in short hops nearby and now and then clear across the play area.
+ * <p/>
+ * <p>Each dart eases in and out so the servos are not jerked from rest to full speed, and
+ * takes longer the further it goes. Targets are picked inside the limits current at the
+ * time; a dart under way when the limits shrink is clamped to the new ones.</p>
+ */
+public class CatAndMouseGenerator implements MotionGenerator {
+    /** Degrees per second a dart averages. */
+    private static final float DART_SPEED = 150f;
+    private static final long MIN_DART_NANOS = 80000000L;
+    private static final long MIN_REST_NANOS = 200000000L;
+    private static final long MAX_REST_NANOS = 1500000000L;
+    /** Share of darts that hop nearby rather than anywhere. */
+    private static final float HOP_CHANCE = 0.7f;
+    /** Farthest a hop goes, as a fraction of the range of each axis. */
+    private static final float HOP_REACH = 0.15f;
+
+    private final Random mRandom;
+    private float mPan;
+    private float mTilt;
+    private float mFromPan;
+    private float mFromTilt;
+    private float mToPan;
+    private float mToTilt;
+    private long mDartStart;
+    private long mDartNanos;
+    /** Once this has passed the next dart starts. */
+    private long mRestUntil;
+
+    public CatAndMouseGenerator(Random random) {
+        mRandom = random;
+    }
+
+    @Override
+    public void start(float pan, float tilt, MoveLimits limits, long nowNanos) {
+        mPan = clamp(pan, limits.xMin, limits.xMax);
+        mTilt = clamp(tilt, limits.yMin, limits.yMax);
+        mToPan = mPan;
+        mToTilt = mTilt;
+        mDartNanos = 0;
+        mRestUntil = nowNanos;
+    }
+
+    @Override
+    public void tick(long nowNanos, MoveLimits limits) {
+        long elapsed = nowNanos - mDartStart;
+        if (elapsed < mDartNanos) {
+            float f = (float) elapsed / mDartNanos;
+            float eased = f * f * (3 - 2 * f);
+            mPan = mFromPan + (mToPan - mFromPan) * eased;
+            mTilt = mFromTilt + (mToTilt - mFromTilt) * eased;
+        } else {
+            mPan = mToPan;
+            mTilt = mToTilt;
+            mDartNanos = 0;
+            if (nowNanos - mRestUntil >= 0) dart(nowNanos, limits);
+        }
+        mPan = clamp(mPan, limits.xMin, limits.xMax);
+        mTilt = clamp(mTilt, limits.yMin, limits.yMax);
+    }
+
+    private void dart(long nowNanos, MoveLimits limits) {
+        mFromPan = clamp(mPan, limits.xMin, limits.xMax);
+        mFromTilt = clamp(mTilt, limits.yMin, limits.yMax);
+        if (mRandom.nextFloat() < HOP_CHANCE) {
+            mToPan = hop(mFromPan, limits.xMin, limits.xMax);
+            mToTilt = hop(mFromTilt, limits.yMin, limits.yMax);
+        } else {
+            mToPan = limits.xMin + mRandom.nextFloat() * (limits.xMax - limits.xMin);
+            mToTilt = limits.yMin + mRandom.nextFloat() * (limits.yMax - limits.yMin);
+        }
+        float dPan = mToPan - mFromPan;
+        float dTilt = mToTilt - mFromTilt;
+        float distance = (float) Math.sqrt(dPan * dPan + dTilt * dTilt);
+        mDartNanos = Math.max(MIN_DART_NANOS, (long) (distance / DART_SPEED * 1e9f));
+        mDartStart = nowNanos;
+        mRestUntil = nowNanos + mDartNanos + MIN_REST_NANOS
+                + (long) (mRandom.nextFloat() * (MAX_REST_NANOS - MIN_REST_NANOS));
+        // the first tick of the dart is this one
+        mPan = mFromPan;
+        mTilt = mFromTilt;
+    }
+
+    private float hop(float from, int min, int max) {
+        float reach = (max - min) * HOP_REACH;
+        return clamp(from + (mRandom.nextFloat() * 2 - 1) * reach, min, max);
+    }
+
+    static float clamp(float value, int min, int max) {
+        return value < min ? min : (value > max ? max : value);
+    }
+
+    @Override
+    public float getPan() {
+        return mPan;
+    }
+
+    @Override
+    public float getTilt() {
+        return mTilt;
+    }
+}
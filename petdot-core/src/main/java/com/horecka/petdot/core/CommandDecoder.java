@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.horecka.petdot.core;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads {@link CommandProtocol} packets. A decoder keeps its sample arrays between packets,
+ * so one instance per receiving thread decodes without allocating.
+ */
+public class CommandDecoder {
+    private final int[] mPans = new int[CommandProtocol.MAX_SAMPLES];
+    private final int[] mTilts = new int[CommandProtocol.MAX_SAMPLES];
+    private final int[] mTimes = new int[CommandProtocol.MAX_SAMPLES];
+    private int mType;
+    private int mSequence;
+    private int mSampleCount;
+    private int mRepeatedCount;
+    private long mTimestamp;
+    private long mSession;
+    private boolean mResumed;
+    private int mPanMin;
+    private int mPanMax;
+    private int mTiltMin;
+    private int mTiltMax;
+
+    /**
+     * Decodes the datagram between the buffer's position and limit.
+     *
+     * @return false if it is not a well formed packet of a known version; the decoder state
+     * is undefined in that case.
+     */
+    public boolean decode(ByteBuffer in) {
+        try {
+            if (in.get() != CommandProtocol.MAGIC) return false;
+            int versionAndType = in.get() & 0xFF;
+            if ((versionAndType >> 4) != CommandProtocol.VERSION) return false;
+            mType = versionAndType & 0x0F;
+            mSequence = in.getInt();
+            mSampleCount = 0;
+            mRepeatedCount = 0;
+            switch (mType) {
+                case CommandProtocol.TYPE_MOVE:
+                    return decodeMove(in);
+                case CommandProtocol.TYPE_TRAJECTORY:
+                    return decodeTrajectory(in);
+                case CommandProtocol.TYPE_ACK:
+                case CommandProtocol.TYPE_LIMITS_ACK:
+                    return true;
+                case CommandProtocol.TYPE_LIMITS:
+                    mPanMin = in.get() & 0xFF;
+                    mPanMax = in.get() & 0xFF;
+                    mTiltMin = in.get() & 0xFF;
+                    mTiltMax = in.get() & 0xFF;
+                    return mPanMin <= mPanMax && mTiltMin <= mTiltMax;
+                case CommandProtocol.TYPE_PING:
+                case CommandProtocol.TYPE_PONG:
+                    mTimestamp = in.getLong();
+                    return true;
+                case CommandProtocol.TYPE_HELLO:
+                    mSession = in.getLong();
+                    return true;
+                case CommandProtocol.TYPE_WELCOME:
+                    mSession = in.getLong();
+                    mResumed = (in.get() & CommandProtocol.WELCOME_RESUMED) != 0;
+                    return true;
+                default:
+                    return false;
+            }
+        } catch (BufferUnderflowException e) {
+            return false;
+        }
+    }
+
+    private boolean decodeMove(ByteBuffer in) {
+        int count = CommandProtocol.getVarint(in);
+        if (count < 1 || count > CommandProtocol.MAX_SAMPLES) return false;
+        int pan = in.get() & 0xFF;
+        int tilt = in.get() & 0xFF;
+        mPans[0] = pan;
+        mTilts[0] = tilt;
+        mTimes[0] = 0;
+        for (int i = 1; i < count; i++) {
+            pan += CommandProtocol.unzigzag(CommandProtocol.getVarint(in));
+            tilt += CommandProtocol.unzigzag(CommandProtocol.getVarint(in));
+            if (pan < 0 || pan > CommandProtocol.MAX_ANGLE) return false;
+            if (tilt < 0 || tilt > CommandProtocol.MAX_ANGLE) return false;
+            mPans[i] = pan;
+            mTilts[i] = tilt;
+            mTimes[i] = 0;
+        }
+        mSampleCount = count;
+        return true;
+    }
+
+    private boolean decodeTrajectory(ByteBuffer in) {
+        int count = CommandProtocol.getVarint(in);
+        if (count < 1 || count > CommandProtocol.MAX_SAMPLES) return false;
+        int repeated = CommandProtocol.getVarint(in);
+        if (repeated < 0 || repeated > count) return false;
+        int time = CommandProtocol.getVarint(in);
+        if (time < 0 || time > CommandProtocol.MAX_INTERVAL_MILLIS) return false;
+        int pan = in.get() & 0xFF;
+        int tilt = in.get() & 0xFF;
+        mPans[0] = pan;
+        mTilts[0] = tilt;
+        mTimes[0] = time;
+        for (int i = 1; i < count; i++) {
+            int interval = CommandProtocol.getVarint(in);
+            if (interval < 0 || interval > CommandProtocol.MAX_INTERVAL_MILLIS) return false;
+            time += interval;
+            pan += CommandProtocol.unzigzag(CommandProtocol.getVarint(in));
+            tilt += CommandProtocol.unzigzag(CommandProtocol.getVarint(in));
+            if (pan < 0 || pan > CommandProtocol.MAX_ANGLE) return false;
+            if (tilt < 0 || tilt > CommandProtocol.MAX_ANGLE) return false;
+            mPans[i] = pan;
+            mTilts[i] = tilt;
+            mTimes[i] = time;
+        }
+        mSampleCount = count;
+        mRepeatedCount = repeated;
+        return true;
+    }
+
+    public int getType() {
+        return mType;
+    }
+
+    public int getSequence() {
+        return mSequence;
+    }
+
+    public int getSampleCount() {
+        return mSampleCount;
+    }
+
+    /**
+     * The phone's clock when it sent a ping, or the ping a pong answers, in nanoseconds.
+     */
+    public long getTimestamp() {
+        return mTimestamp;
+    }
+
+    /**
+     * The session token of a hello or welcome.
+     */
+    public long getSession() {
+        return mSession;
+    }
+
+    /**
+     * Whether a welcome resumed the session, in which case the sequence is the last move
+     * the unit applied.
+     */
+    public boolean isResumed() {
+        return mResumed;
+    }
+
+    /**
+     * Travel set by a limits packet, in servo degrees.
+     */
+    public int getPanMin() {
+        return mPanMin;
+    }
+
+    public int getPanMax() {
+        return mPanMax;
+    }
+
+    public int getTiltMin() {
+        return mTiltMin;
+    }
+
+    public int getTiltMax() {
+        return mTiltMax;
+    }
+
+    /**
+     * How many of the leading samples of a trajectory repeat the end of earlier packets.
+     */
+    public int getRepeatedCount() {
+        return mRepeatedCount;
+    }
+
+    public int getPan(int index) {
+        return mPans[index];
+    }
+
+    public int getTilt(int index) {
+        return mTilts[index];
+    }
+
+    /**
+     * When sample {@code index} is to be reached, in milliseconds after the packet arrives.
+     * Always 0 for move packets, whose samples are applied at once.
+     */
+    public int getTime(int index) {
+        return mTimes[index];
+    }
+}
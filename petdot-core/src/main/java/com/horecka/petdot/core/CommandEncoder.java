@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.horecka.petdot.core;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Writes {@link CommandProtocol} packets. Encoding is done straight into the caller's buffer
+ * and does not allocate.
+ */
+public final class CommandEncoder {
+    private CommandEncoder() { }
+
+    /**
+     * Encodes the unit's acknowledgement of the move packet {@code sequence}.
+     */
+    public static void encodeAck(ByteBuffer out, int sequence) {
+        CommandProtocol.putHeader(out, CommandProtocol.TYPE_ACK, sequence);
+    }
+
+    /**
+     * Encodes a heartbeat stamped with the phone's clock.
+     */
+    public static void encodePing(ByteBuffer out, int sequence, long timeNanos) {
+        CommandProtocol.putHeader(out, CommandProtocol.TYPE_PING, sequence);
+        out.putLong(timeNanos);
+    }
+
+    /**
+     * Encodes the unit's answer to a heartbeat, echoing its sequence and timestamp.
+     */
+    public static void encodePong(ByteBuffer out, int sequence, long timeNanos) {
+        CommandProtocol.putHeader(out, CommandProtocol.TYPE_PONG, sequence);
+        out.putLong(timeNanos);
+    }
+
+    /**
+     * Encodes the phone's session greeting; {@code sequence} counts its attempts.
+     */
+    public static void encodeHello(ByteBuffer out, int sequence, long session) {
+        CommandProtocol.putHeader(out, CommandProtocol.TYPE_HELLO, sequence);
+        out.putLong(session);
+    }
+
+    /**
+     * Encodes the unit's answer to a greeting.
+     *
+     * @param lastSequence the last move sequence applied in a resumed session
+     * @param resumed whether {@code session} was the session the unit already served
+     */
+    public static void encodeWelcome(ByteBuffer out, int lastSequence, long session,
+                                     boolean resumed) {
+        CommandProtocol.putHeader(out, CommandProtocol.TYPE_WELCOME, lastSequence);
+        out.putLong(session);
+        out.put((byte) (resumed ? CommandProtocol.WELCOME_RESUMED : 0));
+    }
+
+    /**
+     * Encodes the servo travel the unit is to allow.
+     */
+    public static void encodeLimits(ByteBuffer out, int sequence, MoveLimits limits) {
+        CommandProtocol.putHeader(out, CommandProtocol.TYPE_LIMITS, sequence);
+        out.put((byte) CommandProtocol.clampAngle(limits.xMin));
+        out.put((byte) CommandProtocol.clampAngle(limits.xMax));
+        out.put((byte) CommandProtocol.clampAngle(limits.yMin));
+        out.put((byte) CommandProtocol.clampAngle(limits.yMax));
+    }
+
+    /**
+     * Encodes the unit's confirmation that it applied the limits packet {@code sequence}.
+     */
+    public static void encodeLimitsAck(ByteBuffer out, int sequence) {
+        CommandProtocol.putHeader(out, CommandProtocol.TYPE_LIMITS_ACK, sequence);
+    }
+
+    /**
+     * Encodes a single sample move packet.
+     */
+    public static void encodeMove(ByteBuffer out, int sequence, int pan, int tilt) {
+        CommandProtocol.putHeader(out, CommandProtocol.TYPE_MOVE, sequence);
+        CommandProtocol.putVarint(out, 1);
+        out.put((byte) CommandProtocol.clampAngle(pan));
+        out.put((byte) CommandProtocol.clampAngle(tilt));
+    }
+
+    /**
+     * Encodes {@code count} samples starting at {@code offset}, delta coding all but the first.
+     */
+    public static void encodeMove(ByteBuffer out, int sequence,
+                                  int[] pans, int[] tilts, int offset, int count) {
+        if (count < 1 || count > CommandProtocol.MAX_SAMPLES) {
+            throw new IllegalArgumentException("sample count " + count);
+        }
+        CommandProtocol.putHeader(out, CommandProtocol.TYPE_MOVE, sequence);
+        CommandProtocol.putVarint(out, count);
+        int pan = CommandProtocol.clampAngle(pans[offset]);
+        int tilt = CommandProtocol.clampAngle(tilts[offset]);
+        out.put((byte) pan);
+        out.put((byte) tilt);
+        for (int i = offset + 1; i < offset + count; i++) {
+            int nextPan = CommandProtocol.clampAngle(pans[i]);
+            int nextTilt = CommandProtocol.clampAngle(tilts[i]);
+            CommandProtocol.putVarint(out, CommandProtocol.zigzag(nextPan - pan));
+            CommandProtocol.putVarint(out, CommandProtocol.zigzag(nextTilt - tilt));
+            pan = nextPan;
+            tilt = nextTilt;
+        }
+    }
+
+    /**
+     * Encodes {@code count} timed samples starting at {@code offset} as a trajectory segment
+     * without repeats.
+     *
+     * @param leadInMillis time from the last sample of the previous segment to the first one
+     * of this segment, 0 to have the unit jump to it
+     * @param timesNanos sample times on the monotonic clock; only the intervals are sent
+     */
+    public static void encodeTrajectory(ByteBuffer out, int sequence, int leadInMillis,
+                                        int[] pans, int[] tilts, long[] timesNanos,
+                                        int offset, int count) {
+        encodeTrajectory(out, sequence, leadInMillis, 0, pans, tilts, timesNanos,
+                offset, count);
+    }
+
+    /**
+     * Encodes {@code count} timed samples starting at {@code offset} as a trajectory segment
+     * whose first {@code repeated} samples were already sent in earlier packets.
+     */
+    public static void encodeTrajectory(ByteBuffer out, int sequence, int leadInMillis,
+                                        int repeated, int[] pans, int[] tilts,
+                                        long[] timesNanos, int offset, int count) {
+        if (count < 1 || count > CommandProtocol.MAX_SAMPLES) {
+            throw new IllegalArgumentException("sample count " + count);
+        }
+        if (repeated < 0 || repeated > count) {
+            throw new IllegalArgumentException("repeated samples " + repeated);
+        }
+        CommandProtocol.putHeader(out, CommandProtocol.TYPE_TRAJECTORY, sequence);
+        CommandProtocol.putVarint(out, count);
+        CommandProtocol.putVarint(out, repeated);
+        CommandProtocol.putVarint(out, clampInterval(leadInMillis));
+        int pan = CommandProtocol.clampAngle(pans[offset]);
+        int tilt = CommandProtocol.clampAngle(tilts[offset]);
+        out.put((byte) pan);
+        out.put((byte) tilt);
+        long start = timesNanos[offset];
+        long millis = 0;
+        for (int i = offset + 1; i < offset + count; i++) {
+            // intervals of the rounded offsets, so rounding errors do not add up
+            long nextMillis = (timesNanos[i] - start) / 1000000L;
+            int nextPan = CommandProtocol.clampAngle(pans[i]);
+            int nextTilt = CommandProtocol.clampAngle(tilts[i]);
+            CommandProtocol.putVarint(out, clampInterval(nextMillis - millis));
+            CommandProtocol.putVarint(out, CommandProtocol.zigzag(nextPan - pan));
+            CommandProtocol.putVarint(out, CommandProtocol.zigzag(nextTilt - tilt));
+            millis = nextMillis;
+            pan = nextPan;
+            tilt = nextTilt;
+        }
+    }
+
+    private static int clampInterval(long millis) {
+        if (millis < 0) return 0;
+        return (int) Math.min(millis, CommandProtocol.MAX_INTERVAL_MILLIS);
+    }
+}
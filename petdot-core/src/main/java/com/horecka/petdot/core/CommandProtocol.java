@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.horecka.petdot.core;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Wire format shared by the phone and the PetDot unit.
+ * <p/>
+ * <p>Every datagram starts with a fixed six byte header:</p>
+ * <pre>
+ *   0      magic 'P'
+ *   1      version (high nibble) | packet type (low nibble)
+ *   2..5   sequence number, big endian
+ * </pre>
+ * <p>A {@link #TYPE_MOVE} body holds one or more pan/tilt samples in servo degrees. The
+ * sample count is a varint, the first sample is sent as two unsigned bytes and every
+ * following sample as a zigzag varint delta from the one before it. A single sample costs
+ * nine bytes on the wire, each additional sample of a drag usually two.</p>
+ * <p/>
+ * <p>A {@link #TYPE_TRAJECTORY} body is a timed segment of the path for the unit to play
+ * back on its own servo tick. After the sample count comes the number of leading samples
+ * that are repeats, then a varint lead-in, the milliseconds from the sample before the
+ * first one in the packet to it (0 to jump straight to it), then the first sample as two
+ * unsigned bytes, and every following sample as a varint millisecond interval and the
+ * two zigzag deltas.</p>
+ * <p/>
+ * <p>The repeated samples are the end of the path already sent, a cheap forward error
+ * correction: a unit that applied the previous packet skips them, one that missed it plays
+ * them first and so still reaches the lost positions without a retransmission. A packet
+ * made of repeats only follows the end of a stroke, so that losing its last packet does
+ * not leave the laser short of where the finger stopped.</p>
+ * <p/>
+ * <p>Independently of the stream the phone sends a {@link #TYPE_PING} heartbeat a few
+ * times a second, carrying its own eight byte monotonic timestamp, and the unit echoes
+ * sequence and timestamp back in a {@link #TYPE_PONG}. Heartbeats have a sequence of their
+ * own and never affect which moves are applied.</p>
+ * <p/>
+ * <p>Whenever the phone (re)connects it sends a {@link #TYPE_HELLO} carrying an eight byte
+ * session token that stays the same for as long as the app runs, and the unit answers with
+ * a {@link #TYPE_WELCOME} echoing the token followed by a flags byte. If the token is the
+ * session the unit already serves it sets {@link #WELCOME_RESUMED} and the header carries
+ * the last sequence it applied, so after a roam the phone carries on where it was. An
+ * unknown token starts a new session: the unit forgets the sequence it has seen, so that
+ * a restarted app is never held back behind its predecessor. The phone streams without
+ * waiting for the welcome; a unit that does not know these packets simply ignores them.</p>
+ * <p/>
+ * <p>A {@link #TYPE_LIMITS} packet sets the travel the unit allows, as four unsigned bytes
+ * pan min, pan max, tilt min, tilt max; from then on it clamps every position it plays,
+ * including those of packets already on their way. The unit confirms with a body-less
+ * {@link #TYPE_LIMITS_ACK} echoing the sequence, which counts limits packets of its own.
+ * A new session starts with the full range.</p>
+ * <p/>
+ * <p>Sequence numbers increase by one per packet and wrap. The unit only applies a move
+ * packet whose sequence is newer than the last one it applied (see {@link SequenceWindow})
+ * and answers it with a body-less {@link #TYPE_ACK} carrying that sequence number. Move
+ * and trajectory packets share the sequence.</p>
+ */
+public final class CommandProtocol {
+    public static final byte MAGIC = 'P';
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 6;
+
+    public static final int TYPE_MOVE = 1;
+    public static final int TYPE_ACK = 2;
+    public static final int TYPE_TRAJECTORY = 3;
+    public static final int TYPE_PING = 4;
+    public static final int TYPE_PONG = 5;
+    public static final int TYPE_HELLO = 6;
+    public static final int TYPE_WELCOME = 7;
+    public static final int TYPE_LIMITS = 8;
+    public static final int TYPE_LIMITS_ACK = 9;
+
+    /** {@link #TYPE_WELCOME} flag: the unit kept the session and its sequence is valid. */
+    public static final int WELCOME_RESUMED = 1;
+
+    /** Angles are carried in a single unsigned byte. */
+    public static final int MAX_ANGLE = 255;
+    /** Upper bound on samples in one move packet, keeps datagrams well under any MTU. */
+    public static final int MAX_SAMPLES = 64;
+    /** Worst case size of a move packet carrying {@link #MAX_SAMPLES} samples. */
+    public static final int MAX_MOVE_SIZE = HEADER_SIZE + 1 + 2 + (MAX_SAMPLES - 1) * 4;
+    /** Longest interval a trajectory carries, keeps each interval within a two byte varint. */
+    public static final int MAX_INTERVAL_MILLIS = (1 << 14) - 1;
+    /** Worst case size of a trajectory packet carrying {@link #MAX_SAMPLES} samples. */
+    public static final int MAX_TRAJECTORY_SIZE =
+            HEADER_SIZE + 1 + 1 + 2 + 2 + (MAX_SAMPLES - 1) * 6;
+    /** Large enough for any packet either side sends. */
+    public static final int MAX_PACKET_SIZE = 512;
+
+    private CommandProtocol() { }
+
+    public static void putHeader(ByteBuffer out, int type, int sequence) {
+        out.put(MAGIC);
+        out.put((byte) ((VERSION << 4) | (type & 0x0F)));
+        out.putInt(sequence);
+    }
+
+    public static void putVarint(ByteBuffer out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    /**
+     * @return the decoded value, or -1 if the varint is longer than five bytes.
+     */
+    public static int getVarint(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        return -1;
+    }
+
+    public static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    public static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public static int clampAngle(int angle) {
+        return angle < 0 ? 0 : (angle > MAX_ANGLE ? MAX_ANGLE : angle);
+    }
+}
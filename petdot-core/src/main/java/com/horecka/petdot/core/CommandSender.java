@@ -0,0 +1,868 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.horecka.petdot.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Streams pan/tilt commands to a PetDot unit from a dedicated sender thread.
+ * <p/>
+ * <p>The UI thread only publishes raw touch samples into a {@link TouchSampleRing} and
+ * never touches the socket. The sender thread drains them, maps them to servo angles and
+ * collects them with their timestamps into a batch, which it writes as one
+ * {@link CommandProtocol} trajectory packet to a {@link UdpCommandLink} once it holds
+ * enough samples or has waited long enough (see {@link #setBatching}). The unit replays
+ * the segment at its original pace on its own servo tick, so a handful of packets a second
+ * still reproduce the drawn path, and the UI thread never waits on I/O. Once the unit
+ * acknowledges packets a {@link RateController} stretches or shortens the batches to the
+ * round trip and loss it measures.</p>
+ * <p/>
+ * <p>Heartbeats go out every {@link #HEARTBEAT_NANOS} whether or not anything is being
+ * drawn, and their replies keep {@link #getLinkHealth()} current.</p>
+ * <p/>
+ * <p>Once started the sender keeps the link up by itself. A socket error closes the
+ * channel and it is reopened after an {@link ExponentialBackoff}, and a unit that falls
+ * silent for {@link #SILENCE_NANOS} is greeted again from a fresh socket, in case the phone
+ * roamed to another access point. Greetings are retried on the backoff from the same
+ * socket, and it is only replaced again once another whole silence has passed since it
+ * was opened, so that a welcome to an earlier greeting, from a unit that is still booting,
+ * reaches a port that is still listening. Every greeting carries this sender's session token
+ * (see {@link CommandProtocol#TYPE_HELLO}), so a unit that kept the session tells which
+ * packet it applied last and the stroke continues from there, while a rebooted one is sent
+ * the last position again. The listener hears of every failed and reopened channel.</p>
+ * <p/>
+ * <p>Configuration changes apply mid-stream: the worker takes a fresh {@link PetDotConfig}
+ * snapshot on every loop and a new {@link #setTransform transform} with the next samples,
+ * and sends new move limits to the unit as soon as they change, so that it clamps what it
+ * is already playing without waiting for the stroke to end or the link to be reopened.</p>
+ * <p/>
+ * <p>Only the newest position matters to a laser pointer, so the sender never builds up a
+ * backlog. A batch that cannot be written yet stays pending, and whatever part of it falls
+ * too far behind the newest sample is dropped when it is finally sent; once the unit
+ * acknowledges packets no more than a few are allowed in flight at a time. After a Wi-Fi
+ * stall the laser therefore jumps to where the finger is instead of replaying the
+ * stall.</p>
+ * <p/>
+ * <p>The same thread reads the unit's acknowledgements and feeds every stage of the trip
+ * into a {@link LatencyTracer}, and counts samples and packets in {@link PetDotMetrics}.</p>
+ */
+public class CommandSender {
+
+    /**
+     * Receives link state changes. Called on the sender thread, with {@code connected}
+     * false and the error whenever the channel failed and is about to be reopened.
+     */
+    public interface Listener {
+        public void onLinkStateChanged(boolean connected, IOException error);
+    }
+
+    private static final int RING_CAPACITY = 256;
+    /** Enough for a packet being written and one being read, plus an exiting connection's. */
+    private static final int BUFFERS = 4;
+    /** Heartbeats go out four times a second, connected or streaming or not. */
+    public static final long HEARTBEAT_NANOS = 250000000L;
+    /** A unit that answers nothing for this long has rebooted or the phone has roamed. */
+    public static final long SILENCE_NANOS = 3 * HEARTBEAT_NANOS;
+    /** Reconnection attempts start this soon and back off to at most a couple of seconds. */
+    private static final long RECONNECT_BASE_NANOS = 50000000L;
+    private static final long RECONNECT_MAX_NANOS = 2000000000L;
+    /** Unconfirmed limits are sent again this often, a few times before giving up. */
+    private static final long LIMITS_RETRY_NANOS = 200000000L;
+    private static final int MAX_LIMITS_ATTEMPTS = 10;
+    /** While a heartbeat is unanswered, replies are looked for this often... */
+    private static final long PONG_POLL_NANOS = 500000L;
+    /** ...for at most this long, after which it is probably lost. */
+    private static final long PONG_POLL_WINDOW_NANOS = 100000000L;
+    /** Write times are remembered for this many packets to match acknowledgements. */
+    private static final int IN_FLIGHT = 256;
+    /** How often to look for acknowledgements while packets are unacknowledged. */
+    private static final long ACK_POLL_NANOS = 2000000L;
+    /** Packets not acknowledged within this time are considered lost. */
+    private static final long ACK_TIMEOUT_NANOS = 1000000000L;
+    /** Packets that may be on their way to the unit before newer ones are held back. */
+    private static final int MAX_UNACKED = 4;
+    /** Samples per trajectory packet before it is sent early. */
+    public static final int DEFAULT_BATCH_SAMPLES = 16;
+    /** How long the oldest sample may wait for its packet, about 20 packets a second. */
+    public static final long DEFAULT_BATCH_NANOS = 50000000L;
+    /** A trajectory never reaches further back than this from its newest sample. */
+    private static final long MAX_SEGMENT_NANOS = 250000000L;
+    /** Samples each packet repeats from the previous ones, before adapting to loss. */
+    public static final int DEFAULT_REDUNDANCY = 2;
+    public static final int MAX_REDUNDANCY = 8;
+
+    private final LatencyTracer mTracer = new LatencyTracer();
+    private final LinkHealth mHealth = new LinkHealth();
+    private final PetDotMetrics mMetrics;
+    /** Datagram buffers, shared by successive connections. */
+    private final BufferPool mBuffers;
+    /**
+     * Shared by successive connections so the unit never sees the sequence go back; starts
+     * at a random value so a restarted app is unlikely to land just behind the last one.
+     */
+    private final AtomicInteger mSequence = new AtomicInteger(new Random().nextInt());
+    /** Identifies this sender to the unit across reconnections, see {@link CommandProtocol}. */
+    private final long mSession = new Random().nextLong();
+    private volatile Worker mWorker;
+    private volatile Listener mListener;
+    private volatile ServoTransform mTransform;
+    /** Rates; the worker reads it once per loop, see {@link PetDotConfig}. */
+    private final ConfigHolder mConfig;
+
+    public CommandSender() {
+        this(new PetDotMetrics());
+    }
+
+    public CommandSender(PetDotMetrics metrics) {
+        this(metrics, new ConfigHolder(PetDotConfig.DEFAULT));
+    }
+
+    /**
+     * @param config the app's configuration, which the rate setters below also update
+     */
+    public CommandSender(PetDotMetrics metrics, ConfigHolder config) {
+        mMetrics = metrics;
+        mConfig = config;
+        mBuffers = new BufferPool(CommandProtocol.MAX_PACKET_SIZE, BUFFERS,
+                metrics.bufferAllocations);
+    }
+
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Latency of every stage from touch to acknowledgement, across connections.
+     */
+    public LatencyTracer getTracer() {
+        return mTracer;
+    }
+
+    public PetDotMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    public ConfigHolder getConfig() {
+        return mConfig;
+    }
+
+    /**
+     * Round trip, jitter and loss of the current connection, from heartbeats.
+     */
+    public LinkHealth getLinkHealth() {
+        return mHealth;
+    }
+
+    /**
+     * Starts streaming to the given unit, replacing any previous connection. Returns
+     * immediately; the channel is opened on the sender thread, and reopened there until
+     * {@link #stop()} whenever it fails.
+     */
+    public synchronized void start(String host, int port) {
+        stop();
+        mHealth.reset();
+        mWorker = new Worker(new UdpCommandLink(host, port));
+        mWorker.start();
+    }
+
+    public void start(Endpoint endpoint) {
+        start(endpoint.host, endpoint.port);
+    }
+
+    /**
+     * Stops the sender thread without waiting for it to exit.
+     */
+    public synchronized void stop() {
+        Worker worker = mWorker;
+        if (worker == null) return;
+        mWorker = null;
+        worker.quit();
+    }
+
+    public boolean isRunning() {
+        return mWorker != null;
+    }
+
+    /**
+     * Sets the mapping from touch samples to servo angles. Samples are dropped while no
+     * transform is set. It applies from the next samples on, in the middle of a stroke if
+     * need be.
+     */
+    public void setTransform(ServoTransform transform) {
+        mTransform = transform;
+        configChanged();
+    }
+
+    /**
+     * Has the sender pick up a changed {@link #getConfig() config} now rather than on its
+     * next heartbeat, e.g. to send new limits to the unit.
+     */
+    public void configChanged() {
+        Worker worker = mWorker;
+        if (worker != null) LockSupport.unpark(worker);
+    }
+
+    /**
+     * Sets when a trajectory packet is sent: as soon as it holds {@code maxSamples} samples
+     * or its oldest sample has waited {@code maxDelayNanos}. {@code maxSamples} of 1 sends
+     * every sample on its own. With an adaptive rate this is only where each connection
+     * starts from.
+     */
+    public void setBatching(int maxSamples, long maxDelayNanos) {
+        synchronized (mConfig) {
+            mConfig.set(mConfig.get().withBatching(maxSamples, maxDelayNanos));
+        }
+    }
+
+    /**
+     * Sets how many of the last samples sent each trajectory packet repeats, so the unit
+     * can bridge a lost packet without a retransmission. With an adaptive rate more are
+     * repeated as loss rises, up to {@link #MAX_REDUNDANCY}. 0 turns repeats off, including
+     * the repeat-only packet after each stroke.
+     */
+    public void setRedundancy(int samples) {
+        synchronized (mConfig) {
+            mConfig.set(mConfig.get().withRedundancy(samples));
+        }
+    }
+
+    /**
+     * Whether a {@link RateController} adjusts batching to the round trip and loss it
+     * measures from acknowledgements. On by default; units that never acknowledge are
+     * always sent to at the {@link #setBatching} rate.
+     */
+    public void setAdaptiveRate(boolean adaptive) {
+        synchronized (mConfig) {
+            mConfig.set(mConfig.get().withAdaptiveRate(adaptive));
+        }
+    }
+
+    /**
+     * Publishes a touch sample in surface pixels. Must always be called from the same
+     * thread. Never blocks and never allocates.
+     *
+     * @param timeNanos event time on the monotonic clock, in nanoseconds
+     */
+    public void offerTouch(float x, float y, long timeNanos) {
+        Worker worker = mWorker;
+        if (worker == null) return;
+        mMetrics.touchSamples.increment();
+        if (!worker.mSamples.offer(x, y, timeNanos)) mMetrics.samplesDropped.increment();
+        if (worker.mParked) LockSupport.unpark(worker);
+    }
+
+    /**
+     * Publishes a position in servo degrees, e.g. from a {@link MotionEngine}, sent as is
+     * without the touch transform. Must always be called from the same thread, which need
+     * not be the one calling {@link #offerTouch}. Never blocks and never allocates.
+     *
+     * @param timeNanos when the laser should be there, on the monotonic clock
+     */
+    public void offerPosition(float pan, float tilt, long timeNanos) {
+        Worker worker = mWorker;
+        if (worker == null) return;
+        if (!worker.mPositions.offer(pan, tilt, timeNanos)) mMetrics.samplesDropped.increment();
+        if (worker.mParked) LockSupport.unpark(worker);
+    }
+
+    private void notifyState(Worker worker, boolean connected, IOException error) {
+        Listener listener = mListener;
+        if (listener != null && worker == mWorker) {
+            listener.onLinkStateChanged(connected, error);
+        }
+    }
+
+    private class Worker extends Thread {
+        final TouchSampleRing mSamples = new TouchSampleRing(RING_CAPACITY);
+        /** Positions already in degrees; x is pan and y is tilt. */
+        final TouchSampleRing mPositions = new TouchSampleRing(RING_CAPACITY);
+        volatile boolean mParked;
+        private final UdpCommandLink mLink;
+        private final CommandDecoder mDecoder = new CommandDecoder();
+        // drained from the ring
+        private final float[] mXs = new float[CommandProtocol.MAX_SAMPLES];
+        private final float[] mYs = new float[CommandProtocol.MAX_SAMPLES];
+        private final long[] mTimes = new long[CommandProtocol.MAX_SAMPLES];
+        private final long[] mEnqueueTimes = new long[CommandProtocol.MAX_SAMPLES];
+        // mapped and waiting for the next packet, oldest first
+        private final int[] mPans = new int[CommandProtocol.MAX_SAMPLES];
+        private final int[] mTilts = new int[CommandProtocol.MAX_SAMPLES];
+        private final long[] mPendingTimes = new long[CommandProtocol.MAX_SAMPLES];
+        private final long[] mPendingEnqueueTimes = new long[CommandProtocol.MAX_SAMPLES];
+        private int mPendingCount;
+        // per in-flight packet, indexed by sequence & (IN_FLIGHT - 1)
+        private final int[] mSentSequences = new int[IN_FLIGHT];
+        private final long[] mWriteTimes = new long[IN_FLIGHT];
+        private final long[] mEventTimes = new long[IN_FLIGHT];
+        private final RateController mRate = new RateController(mConfig.get().batchNanos);
+        // the configuration as of this loop iteration
+        private PetDotConfig mSnapshot = mConfig.get();
+        private final boolean[] mCarriesFresh = new boolean[IN_FLIGHT];
+        // the last samples written, oldest first; the newest are repeated in the next packet
+        // and the one before those gives its lead-in
+        private final int[] mSentPans = new int[MAX_REDUNDANCY + 1];
+        private final int[] mSentTilts = new int[MAX_REDUNDANCY + 1];
+        private final long[] mSentTimes = new long[MAX_REDUNDANCY + 1];
+        private int mSentCount;
+        // the packet being assembled: repeats followed by fresh samples
+        private final int[] mWirePans = new int[CommandProtocol.MAX_SAMPLES];
+        private final int[] mWireTilts = new int[CommandProtocol.MAX_SAMPLES];
+        private final long[] mWireTimes = new long[CommandProtocol.MAX_SAMPLES];
+        /** Repeat-only packets still to send once the stroke goes quiet. */
+        private int mTailsDue;
+        private int mLastSequence;
+        private int mLastAckedSequence;
+        private boolean mAcked;
+        private long mLastWriteNanos;
+        private ByteBuffer mReceived;
+        private int mPingSequence;
+        private long mLastPingNanos;
+        private boolean mPingOutstanding;
+        private final ExponentialBackoff mBackoff = new ExponentialBackoff(
+                RECONNECT_BASE_NANOS, RECONNECT_MAX_NANOS, new Random());
+        private int mHelloSequence;
+        private int mHelloAttempts;
+        private long mNextHelloNanos;
+        private boolean mInSession;
+        private long mLastHeardNanos;
+        /** When the socket was last opened; it is not reopened more than once a silence. */
+        private long mOpenedNanos;
+        // the limits the unit is told about, until it confirms them
+        private MoveLimits mUnitLimits;
+        private boolean mLimitsConfirmed;
+        private int mLimitsSequence;
+        private int mLimitsAttempts;
+        private long mLimitsSentNanos;
+        private volatile boolean mQuit;
+
+        Worker(UdpCommandLink link) {
+            super("PetDot-sender");
+            mLink = link;
+        }
+
+        void quit() {
+            mQuit = true;
+            LockSupport.unpark(this);
+        }
+
+        @Override
+        public void run() {
+            mReceived = mBuffers.acquire();
+            try {
+                while (!mQuit) {
+                    try {
+                        mLink.open();
+                        notifyState(this, true, null);
+                        stream();
+                    } catch (IOException e) {
+                        mLink.close();
+                        notifyState(this, false, e);
+                        backOff(mBackoff.nextDelayNanos());
+                    }
+                }
+            } finally {
+                mLink.close();
+                mBuffers.release(mReceived);
+            }
+        }
+
+        /* Sleeps without holding up quit() */
+        private void backOff(long nanos) {
+            long deadline = System.nanoTime() + nanos;
+            long left = nanos;
+            while (left > 0 && !mQuit) {
+                LockSupport.parkNanos(this, left);
+                left = deadline - System.nanoTime();
+            }
+        }
+
+        /* Streams over the open link until quit() or an I/O error */
+        private void stream() throws IOException {
+            long start = System.nanoTime();
+            mLastPingNanos = start - HEARTBEAT_NANOS;
+            mPingOutstanding = false;
+            mInSession = false;
+            mHelloAttempts = 0;
+            mNextHelloNanos = start;
+            // a fresh socket gets a whole silence to hear back before it is replaced
+            mLastHeardNanos = start;
+            mOpenedNanos = start;
+            // the unit may be a different one than the last stream talked to
+            mUnitLimits = null;
+            while (!mQuit) {
+                mSnapshot = mConfig.get();
+                receive();
+                int count = drainNewest(mSamples);
+                if (count > 0) append(count, false);
+                count = drainNewest(mPositions);
+                if (count > 0) append(count, true);
+                long now = System.nanoTime();
+                if (mInSession && now - mLastHeardNanos > SILENCE_NANOS) loseSession(now);
+                if (!mInSession && now - mNextHelloNanos >= 0) sendHello(now);
+                if (now - mLastPingNanos >= HEARTBEAT_NANOS) sendPing(now);
+                if (!mSnapshot.limits.equals(mUnitLimits)) setUnitLimits(mSnapshot.limits);
+                if (!mLimitsConfirmed && mLimitsAttempts < MAX_LIMITS_ATTEMPTS
+                        && now - mLimitsSentNanos >= LIMITS_RETRY_NANOS) {
+                    sendLimits(now);
+                }
+                if (mPendingCount > 0 && isBatchDue(now) && !isWindowFull(now)) {
+                    boolean probe = mAcked
+                            && mLastSequence - mLastAckedSequence >= MAX_UNACKED;
+                    if (sendPending()) {
+                        // the window only opens for a probe once acks stopped coming
+                        if (probe) mRate.onLoss(MAX_UNACKED, now);
+                        continue;
+                    }
+                } else if (mPendingCount == 0 && mTailsDue > 0 && !isWindowFull(now)
+                        && sendTail(now)) {
+                    continue;
+                }
+                expirePending(now);
+                waitForSamples(now);
+            }
+        }
+
+        /**
+         * The unit stopped answering: start greeting it again from a fresh socket, which
+         * after a roam is bound to the new network.
+         */
+        private void loseSession(long now) throws IOException {
+            mInSession = false;
+            reopen(now);
+            mPingOutstanding = false;
+            mBackoff.reset();
+            mHelloAttempts = 0;
+            mNextHelloNanos = now;
+        }
+
+        private void setUnitLimits(MoveLimits limits) {
+            mUnitLimits = limits;
+            mLimitsConfirmed = false;
+            mLimitsAttempts = 0;
+            mLimitsSentNanos = System.nanoTime() - LIMITS_RETRY_NANOS;
+        }
+
+        private void sendLimits(long now) throws IOException {
+            ByteBuffer datagram = mBuffers.acquire();
+            try {
+                CommandEncoder.encodeLimits(datagram, mLimitsSequence++, mUnitLimits);
+                datagram.flip();
+                mLink.send(datagram);
+            } finally {
+                mBuffers.release(datagram);
+            }
+            mLimitsAttempts++;
+            mLimitsSentNanos = now;
+        }
+
+        private void reopen(long now) throws IOException {
+            mLink.close();
+            mLink.open();
+            mOpenedNanos = now;
+        }
+
+        private void sendHello(long now) throws IOException {
+            if (mHelloAttempts > 0 && now - mLastHeardNanos > SILENCE_NANOS
+                    && now - mOpenedNanos > SILENCE_NANOS) {
+                // still nothing back, the socket may be the problem; not sooner, a welcome
+                // to the greetings sent from the old one would never arrive
+                reopen(now);
+            }
+            mHelloAttempts++;
+            ByteBuffer datagram = mBuffers.acquire();
+            try {
+                CommandEncoder.encodeHello(datagram, mHelloSequence++, mSession);
+                datagram.flip();
+                mLink.send(datagram);
+            } finally {
+                mBuffers.release(datagram);
+            }
+            mNextHelloNanos = now + mBackoff.nextDelayNanos();
+        }
+
+        /**
+         * The unit welcomed us back. If it kept the session, whatever was sent after the
+         * last packet it applied is lost and no longer holds the window shut; either way it
+         * gets the end of the path again unless it already has it.
+         */
+        private void onWelcome(long now) {
+            mInSession = true;
+            mBackoff.reset();
+            mHelloAttempts = 0;
+            boolean current = false;
+            if (mDecoder.isResumed() && mAcked) {
+                int applied = mDecoder.getSequence();
+                if (mLastSequence - applied > 0) {
+                    countLost(applied + 1, mLastSequence + 1, now);
+                    mLastAckedSequence = mLastSequence;
+                }
+                current = applied == mLastSequence;
+            }
+            if (!current && mSentCount > 0) mTailsDue = Math.max(mTailsDue, 1);
+            // a new session starts with the full range
+            if (!mDecoder.isResumed() && mUnitLimits != null) setUnitLimits(mUnitLimits);
+        }
+
+        /**
+         * Drains the ring. If more samples are waiting than fit in one packet only the
+         * newest ones are kept; the unit would only pass through the older ones late.
+         */
+        private int drainNewest(TouchSampleRing ring) {
+            int count = ring.drainTo(null, mXs, mYs, mTimes, mEnqueueTimes, mXs.length);
+            while (count == mXs.length && !ring.isEmpty()) {
+                mMetrics.samplesCoalesced.add(count);
+                count = ring.drainTo(null, mXs, mYs, mTimes, mEnqueueTimes, mXs.length);
+            }
+            return count;
+        }
+
+        /**
+         * Maps the drained samples to servo angles, unless they are {@code positions}
+         * already, and appends them to the pending batch, dropping its oldest samples if
+         * they no longer fit.
+         */
+        private void append(int count, boolean positions) {
+            ServoTransform transform = mTransform;
+            if (transform == null && !positions) {
+                mMetrics.samplesDropped.add(count);
+                return;
+            }
+            int overflow = mPendingCount + count - CommandProtocol.MAX_SAMPLES;
+            if (overflow > 0) discardOldest(overflow);
+            for (int i = 0; i < count; i++) {
+                int index = mPendingCount + i;
+                if (positions) {
+                    mPans[index] = Math.round(mXs[i]);
+                    mTilts[index] = Math.round(mYs[i]);
+                } else {
+                    mPans[index] = transform.mapPan(mXs[i], mYs[i]);
+                    mTilts[index] = transform.mapTilt(mXs[i], mYs[i]);
+                }
+                mPendingTimes[index] = mTimes[i];
+                mPendingEnqueueTimes[index] = mEnqueueTimes[i];
+                mTracer.record(LatencyTracer.EVENT_TO_ENQUEUE, mTimes[i], mEnqueueTimes[i]);
+            }
+            mPendingCount += count;
+        }
+
+        private void discardOldest(int count) {
+            int keep = mPendingCount - count;
+            System.arraycopy(mPans, count, mPans, 0, keep);
+            System.arraycopy(mTilts, count, mTilts, 0, keep);
+            System.arraycopy(mPendingTimes, count, mPendingTimes, 0, keep);
+            System.arraycopy(mPendingEnqueueTimes, count, mPendingEnqueueTimes, 0, keep);
+            mPendingCount = keep;
+            mMetrics.samplesCoalesced.add(count);
+        }
+
+        /* A batch goes out once it is full or its oldest sample has waited long enough */
+        private boolean isBatchDue(long now) {
+            return mPendingCount >= getBatchSamples()
+                    || now - mPendingEnqueueTimes[0] >= getBatchNanos();
+        }
+
+        private boolean isAdaptive() {
+            return mSnapshot.adaptiveRate && mAcked;
+        }
+
+        private int getBatchSamples() {
+            return isAdaptive() ? mRate.getBatchSamples() : mSnapshot.batchSamples;
+        }
+
+        private long getBatchNanos() {
+            return isAdaptive() ? mRate.getIntervalNanos() : mSnapshot.batchNanos;
+        }
+
+        /* Each few percent of loss repeats one more sample */
+        private int getRedundancy() {
+            int redundancy = mSnapshot.redundancy;
+            if (redundancy == 0 || !isAdaptive()) return redundancy;
+            return Math.min(MAX_REDUNDANCY, redundancy + Math.round(mRate.getLossRate() * 20));
+        }
+
+        private int getTailRepeats() {
+            return isAdaptive() && mRate.getLossRate() > 0.1f ? 2 : 1;
+        }
+
+        /**
+         * Once the unit acknowledges packets, holds new ones back while
+         * {@link #MAX_UNACKED} are outstanding, so a stalled link collects the newest
+         * position instead of a queue of old ones. A stall that outlasts the ack timeout
+         * lets one packet through per timeout to probe the link.
+         */
+        private boolean isWindowFull(long now) {
+            return mAcked && mLastSequence - mLastAckedSequence >= MAX_UNACKED
+                    && now - mLastWriteNanos < ACK_TIMEOUT_NANOS;
+        }
+
+        /* Drops a pending batch that could not be written for a whole ack timeout */
+        private void expirePending(long now) {
+            if (mPendingCount > 0
+                    && now - mPendingEnqueueTimes[mPendingCount - 1] > ACK_TIMEOUT_NANOS) {
+                mMetrics.samplesDropped.add(mPendingCount);
+                mPendingCount = 0;
+            }
+        }
+
+        /**
+         * Writes the pending batch as one trajectory packet, headed by repeats of the last
+         * samples sent. Samples further behind the newest one than
+         * {@link #MAX_SEGMENT_NANOS}, left over from a stall, are dropped rather than
+         * played back late.
+         *
+         * @return false if the packet could not be written and is still pending
+         */
+        private boolean sendPending() throws IOException {
+            long newest = mPendingTimes[mPendingCount - 1];
+            int stale = 0;
+            while (newest - mPendingTimes[stale] > MAX_SEGMENT_NANOS) stale++;
+            if (stale > 0) discardOldest(stale);
+
+            int fresh = mPendingCount;
+            int repeats = Math.min(getRedundancy(), CommandProtocol.MAX_SAMPLES - fresh);
+            if (!sendTrajectory(countRepeatable(repeats, mPendingTimes[0]), fresh)) {
+                // keep it; newer samples join it and it is retried
+                return false;
+            }
+            for (int i = 0; i < fresh; i++) {
+                remember(mPans[i], mTilts[i], mPendingTimes[i]);
+            }
+            mPendingCount = 0;
+            mTailsDue = mSnapshot.redundancy > 0 ? getTailRepeats() : 0;
+            return true;
+        }
+
+        /**
+         * Once a stroke has gone quiet for an interval, sends its last samples once more so
+         * a lost final packet does not leave the laser short of the end of the stroke.
+         */
+        private boolean sendTail(long now) throws IOException {
+            if (now - mLastWriteNanos < getBatchNanos()) return false;
+            int repeats = Math.min(Math.max(1, getRedundancy()), mSentCount);
+            repeats = countRepeatable(repeats, mSentTimes[mSentCount - 1]);
+            if (repeats == 0 || !sendTrajectory(repeats, 0)) return false;
+            mTailsDue--;
+            return true;
+        }
+
+        /* How many of the last sent samples, up to max, are recent enough to repeat */
+        private int countRepeatable(int max, long before) {
+            int repeats = Math.min(max, mSentCount);
+            while (repeats > 0
+                    && before - mSentTimes[mSentCount - repeats] > MAX_SEGMENT_NANOS) {
+                repeats--;
+            }
+            return repeats;
+        }
+
+        private void remember(int pan, int tilt, long time) {
+            if (mSentCount == mSentPans.length) {
+                System.arraycopy(mSentPans, 1, mSentPans, 0, mSentCount - 1);
+                System.arraycopy(mSentTilts, 1, mSentTilts, 0, mSentCount - 1);
+                System.arraycopy(mSentTimes, 1, mSentTimes, 0, mSentCount - 1);
+                mSentCount--;
+            }
+            mSentPans[mSentCount] = pan;
+            mSentTilts[mSentCount] = tilt;
+            mSentTimes[mSentCount] = time;
+            mSentCount++;
+        }
+
+        /**
+         * Writes the last {@code repeats} samples sent followed by the first {@code fresh}
+         * pending samples as one trajectory packet.
+         *
+         * @return false if the send buffer was full or the unit is not listening
+         */
+        private boolean sendTrajectory(int repeats, int fresh) throws IOException {
+            int first = mSentCount - repeats;
+            for (int i = 0; i < repeats; i++) {
+                mWirePans[i] = mSentPans[first + i];
+                mWireTilts[i] = mSentTilts[first + i];
+                mWireTimes[i] = mSentTimes[first + i];
+            }
+            System.arraycopy(mPans, 0, mWirePans, repeats, fresh);
+            System.arraycopy(mTilts, 0, mWireTilts, repeats, fresh);
+            System.arraycopy(mPendingTimes, 0, mWireTimes, repeats, fresh);
+            int count = repeats + fresh;
+            // time from the sample before the first one in the packet; after a pause the
+            // unit jumps to the new stroke instead of crawling to it
+            int leadInMillis = 0;
+            if (first > 0 && mWireTimes[0] - mSentTimes[first - 1] <= MAX_SEGMENT_NANOS) {
+                leadInMillis = (int) ((mWireTimes[0] - mSentTimes[first - 1]) / 1000000L);
+            }
+
+            int sequence = mSequence.getAndIncrement();
+            ByteBuffer datagram = mBuffers.acquire();
+            int bytes;
+            long encoded;
+            boolean sent;
+            try {
+                CommandEncoder.encodeTrajectory(datagram, sequence, leadInMillis, repeats,
+                        mWirePans, mWireTilts, mWireTimes, 0, count);
+                datagram.flip();
+                bytes = datagram.remaining();
+                encoded = System.nanoTime();
+                sent = mLink.send(datagram);
+            } finally {
+                // the kernel has its own copy once the write returns
+                mBuffers.release(datagram);
+            }
+            long written = System.nanoTime();
+
+            if (!sent) {
+                mMetrics.sendsFailed.increment();
+                return false;
+            }
+            mMetrics.packetsSent.increment();
+            mMetrics.bytesSent.add(bytes);
+            mMetrics.samplesRepeated.add(repeats);
+            for (int i = 0; i < fresh; i++) {
+                mTracer.record(LatencyTracer.ENQUEUE_TO_ENCODE, mPendingEnqueueTimes[i], encoded);
+            }
+            mTracer.record(LatencyTracer.ENCODE_TO_WRITE, encoded, written);
+            int slot = sequence & (IN_FLIGHT - 1);
+            mSentSequences[slot] = sequence;
+            mWriteTimes[slot] = written;
+            mCarriesFresh[slot] = fresh > 0;
+            // the newest sample is where the laser ends up once this packet is applied
+            mEventTimes[slot] = mWireTimes[count - 1];
+            mLastSequence = sequence;
+            mLastWriteNanos = written;
+            return true;
+        }
+
+        private void sendPing(long now) throws IOException {
+            int sequence = mPingSequence++;
+            ByteBuffer datagram = mBuffers.acquire();
+            try {
+                CommandEncoder.encodePing(datagram, sequence, now);
+                datagram.flip();
+                mPingOutstanding = mLink.send(datagram);
+            } finally {
+                mBuffers.release(datagram);
+            }
+            // a ping that could not be written is as good as lost
+            mHealth.onPingSent(sequence, now);
+            mLastPingNanos = now;
+        }
+
+        private void waitForSamples(long now) {
+            mParked = true;
+            // re-check after announcing, a sample published before mParked was seen
+            // would otherwise not unpark us
+            if (mSamples.isEmpty() && mPositions.isEmpty() && !mQuit) {
+                LockSupport.parkNanos(this, Math.max(getWaitNanos(now), PONG_POLL_NANOS));
+            }
+            mParked = false;
+        }
+
+        /* Time until something is due: a batch, a retry, replies to look for, a heartbeat */
+        private long getWaitNanos(long now) {
+            long wait = mLastPingNanos + HEARTBEAT_NANOS - now;
+            if (!mInSession) wait = Math.min(wait, mNextHelloNanos - now);
+            if (!mLimitsConfirmed && mLimitsAttempts < MAX_LIMITS_ATTEMPTS) {
+                wait = Math.min(wait, mLimitsSentNanos + LIMITS_RETRY_NANOS - now);
+            }
+            if (mPingOutstanding && now - mLastPingNanos < PONG_POLL_WINDOW_NANOS) {
+                // a late look at the reply would add to the measured round trip
+                wait = Math.min(wait, PONG_POLL_NANOS);
+            }
+            if (mPendingCount > 0) {
+                long due = mPendingEnqueueTimes[0] + getBatchNanos() - now;
+                wait = Math.min(wait, due > 0 ? due : ACK_POLL_NANOS);
+            }
+            if (now - mLastWriteNanos < ACK_TIMEOUT_NANOS) {
+                wait = Math.min(wait, ACK_POLL_NANOS);
+            }
+            return wait;
+        }
+
+        private void receive() throws IOException {
+            while (true) {
+                mReceived.clear();
+                if (!mLink.receive(mReceived)) return;
+                long now = System.nanoTime();
+                mReceived.flip();
+                if (!mDecoder.decode(mReceived)) continue;
+                // back after a silence: greet it now rather than at the next backoff
+                if (!mInSession && now - mLastHeardNanos > SILENCE_NANOS) {
+                    mBackoff.reset();
+                    mNextHelloNanos = now;
+                }
+                mLastHeardNanos = now;
+                if (mDecoder.getType() == CommandProtocol.TYPE_WELCOME) {
+                    if (mDecoder.getSession() == mSession) onWelcome(now);
+                    continue;
+                }
+                if (mDecoder.getType() == CommandProtocol.TYPE_LIMITS_ACK) {
+                    if (mDecoder.getSequence() == mLimitsSequence - 1) mLimitsConfirmed = true;
+                    continue;
+                }
+                if (mDecoder.getType() == CommandProtocol.TYPE_PONG) {
+                    mHealth.onPong(mDecoder.getSequence(), mDecoder.getTimestamp(), now);
+                    if (mDecoder.getSequence() == mPingSequence - 1) mPingOutstanding = false;
+                    continue;
+                }
+                if (mDecoder.getType() != CommandProtocol.TYPE_ACK) continue;
+                int sequence = mDecoder.getSequence();
+                int slot = sequence & (IN_FLIGHT - 1);
+                if (mSentSequences[slot] != sequence || mWriteTimes[slot] == 0) continue;
+                if (!mAcked || sequence - mLastAckedSequence > 0) {
+                    if (mAcked) countLost(mLastAckedSequence + 1, sequence, now);
+                    mLastAckedSequence = sequence;
+                    mAcked = true;
+                }
+                if (now - mWriteTimes[slot] > ACK_TIMEOUT_NANOS) continue;
+                mRate.onAck(now - mWriteTimes[slot], now);
+                mMetrics.roundTrip.set(mRate.getSmoothedRttNanos() / 1000);
+                mMetrics.sendInterval.set(mRate.getIntervalNanos() / 1000);
+                mTracer.record(LatencyTracer.WRITE_TO_ACK, mWriteTimes[slot], now);
+                if (mCarriesFresh[slot]) {
+                    mTracer.record(LatencyTracer.EVENT_TO_ACK, mEventTimes[slot], now);
+                }
+                // count each packet once even if the acknowledgement is duplicated
+                mWriteTimes[slot] = 0;
+            }
+        }
+
+        /**
+         * Packets in [from, to) that are still unacknowledged when a later one is, were
+         * lost; the unit never acknowledges a packet once a newer one arrived.
+         */
+        private void countLost(int from, int to, long now) {
+            if (to - from > IN_FLIGHT) from = to - IN_FLIGHT;
+            int lost = 0;
+            for (int sequence = from; sequence != to; sequence++) {
+                int slot = sequence & (IN_FLIGHT - 1);
+                if (mSentSequences[slot] == sequence && mWriteTimes[slot] != 0) {
+                    mWriteTimes[slot] = 0;
+                    lost++;
+                }
+            }
+            if (lost == 0) return;
+            mMetrics.packetsLost.add(lost);
+            mRate.onLoss(lost, now);
+            mMetrics.sendInterval.set(mRate.getIntervalNanos() / 1000);
+        }
+    }
+}
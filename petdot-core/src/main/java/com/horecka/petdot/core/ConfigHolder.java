@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.horecka.petdot.core;
+
+/**
+ * The current {@link PetDotConfig}, shared by the UI, render and sender threads.
+ * <p/>
+ * <p>Reading is a single volatile load, with no lock and nothing to parse. Writers replace
+ * the whole snapshot; one that derives the new snapshot from the current one does so
+ * inside {@code synchronized (holder)}, so that concurrent changes are not lost.</p>
+ */
+public final class ConfigHolder {
+    private volatile PetDotConfig mConfig;
+
+    public ConfigHolder(PetDotConfig config) {
+        mConfig = config;
+    }
+
+    public PetDotConfig get() {
+        return mConfig;
+    }
+
+    public synchronized void set(PetDotConfig config) {
+        mConfig = config;
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.horecka.petdot.core;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+
+/**
+ * Desktop stand-in for a PetDot unit: receives {@link CommandProtocol} packets, applies
+ * them to a simulated pan/tilt head and acknowledges every move packet it applies, as
+ * the firmware does. Move packets older than the last applied one are discarded, and
+ * trajectory segments are played back by a {@link TrajectoryPlayer} on a fixed servo
+ * tick. Heartbeats are answered, and a greeting from a new session forgets the sequence
+ * of the previous one while a known session is resumed. Positions are clamped to the
+ * travel set by the last limits packet. Useful for measuring the pipeline without hardware:
+ * <pre>
+ *   java -cp petdot-core.jar com.horecka.petdot.core.DeviceSimulator [port]
+ * </pre>
+ */
+public class DeviceSimulator implements Runnable {
+    /** Servos take a new position every 20 ms. */
+    private static final long SERVO_TICK_NANOS = 20000000L;
+
+    private final DatagramChannel mChannel;
+    private final Selector mSelector;
+    private final ByteBuffer mReceived = ByteBuffer.allocateDirect(CommandProtocol.MAX_PACKET_SIZE);
+    private final ByteBuffer mReply = ByteBuffer.allocateDirect(CommandProtocol.MAX_PACKET_SIZE);
+    private final CommandDecoder mDecoder = new CommandDecoder();
+    private final SequenceWindow mSequences = new SequenceWindow();
+    private final TrajectoryPlayer mPlayer = new TrajectoryPlayer();
+
+    private volatile int mPan;
+    private volatile int mTilt;
+    private volatile long mPacketsApplied;
+    private volatile long mPacketsDiscarded;
+    private volatile long mLossesRepaired;
+    private volatile long mSessionsResumed;
+    private boolean mHasSession;
+    private long mSession;
+    private int mPanMin = 0;
+    private int mPanMax = CommandProtocol.MAX_ANGLE;
+    private int mTiltMin = 0;
+    private int mTiltMax = CommandProtocol.MAX_ANGLE;
+
+    public DeviceSimulator(int port) throws IOException {
+        mChannel = DatagramChannel.open();
+        mChannel.socket().bind(new InetSocketAddress(port));
+        mChannel.configureBlocking(false);
+        mSelector = Selector.open();
+        mChannel.register(mSelector, SelectionKey.OP_READ);
+    }
+
+    public int getLocalPort() {
+        return mChannel.socket().getLocalPort();
+    }
+
+    public int getPan() {
+        return mPan;
+    }
+
+    public int getTilt() {
+        return mTilt;
+    }
+
+    public long getPacketsApplied() {
+        return mPacketsApplied;
+    }
+
+    /**
+     * Move packets that arrived after a newer one and were not applied.
+     */
+    public long getPacketsDiscarded() {
+        return mPacketsDiscarded;
+    }
+
+    /**
+     * Gaps in the sequence that were bridged by replaying a packet's repeated samples.
+     */
+    public long getLossesRepaired() {
+        return mLossesRepaired;
+    }
+
+    /**
+     * Greetings from the session already being served.
+     */
+    public long getSessionsResumed() {
+        return mSessionsResumed;
+    }
+
+    /**
+     * Serves packets until {@link #close()} is called.
+     */
+    @Override
+    public void run() {
+        try {
+            long nextTick = System.nanoTime();
+            while (mChannel.isOpen()) {
+                long wait = nextTick - System.nanoTime();
+                if (wait > 0) mSelector.select(Math.max(1, wait / 1000000L));
+                mSelector.selectedKeys().clear();
+                receivePackets();
+                long now = System.nanoTime();
+                if (now - nextTick >= 0) {
+                    mPlayer.tick(now);
+                    updatePosition();
+                    nextTick += SERVO_TICK_NANOS;
+                    if (now - nextTick > 0) nextTick = now + SERVO_TICK_NANOS;
+                }
+            }
+        } catch (ClosedChannelException e) {
+            // closed by close()
+        } catch (ClosedSelectorException e) {
+            // closed by close()
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void receivePackets() throws IOException {
+        while (true) {
+            mReceived.clear();
+            SocketAddress sender = mChannel.receive(mReceived);
+            if (sender == null) return;
+            mReceived.flip();
+            if (!mDecoder.decode(mReceived)) continue;
+            handlePacket(sender);
+        }
+    }
+
+    private void handlePacket(SocketAddress sender) throws IOException {
+        switch (mDecoder.getType()) {
+            case CommandProtocol.TYPE_MOVE:
+            case CommandProtocol.TYPE_TRAJECTORY:
+                int sequence = mDecoder.getSequence();
+                boolean started = mSequences.hasStarted();
+                boolean contiguous = started && sequence - mSequences.getLast() == 1;
+                if (!mSequences.accept(sequence)) {
+                    mPacketsDiscarded++;
+                    break;
+                }
+                // the repeats are news only if the packet before this one went missing
+                int first = contiguous ? mDecoder.getRepeatedCount() : 0;
+                if (started && !contiguous && mDecoder.getRepeatedCount() > 0) {
+                    mLossesRepaired++;
+                }
+                if (first < mDecoder.getSampleCount()) {
+                    mPlayer.play(mDecoder, first, System.nanoTime());
+                }
+                updatePosition();
+                mPacketsApplied++;
+                mReply.clear();
+                CommandEncoder.encodeAck(mReply, mDecoder.getSequence());
+                mReply.flip();
+                mChannel.send(mReply, sender);
+                break;
+            case CommandProtocol.TYPE_PING:
+                mReply.clear();
+                CommandEncoder.encodePong(mReply, mDecoder.getSequence(),
+                        mDecoder.getTimestamp());
+                mReply.flip();
+                mChannel.send(mReply, sender);
+                break;
+            case CommandProtocol.TYPE_HELLO:
+                boolean resumed = mHasSession && mDecoder.getSession() == mSession;
+                if (resumed) {
+                    mSessionsResumed++;
+                } else {
+                    mHasSession = true;
+                    mSession = mDecoder.getSession();
+                    mSequences.reset();
+                    setLimits(0, CommandProtocol.MAX_ANGLE, 0, CommandProtocol.MAX_ANGLE);
+                }
+                mReply.clear();
+                CommandEncoder.encodeWelcome(mReply, mSequences.getLast(), mSession,
+                        resumed && mSequences.hasStarted());
+                mReply.flip();
+                mChannel.send(mReply, sender);
+                break;
+            case CommandProtocol.TYPE_LIMITS:
+                setLimits(mDecoder.getPanMin(), mDecoder.getPanMax(),
+                        mDecoder.getTiltMin(), mDecoder.getTiltMax());
+                mReply.clear();
+                CommandEncoder.encodeLimitsAck(mReply, mDecoder.getSequence());
+                mReply.flip();
+                mChannel.send(mReply, sender);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void setLimits(int panMin, int panMax, int tiltMin, int tiltMax) {
+        mPanMin = panMin;
+        mPanMax = panMax;
+        mTiltMin = tiltMin;
+        mTiltMax = tiltMax;
+        updatePosition();
+    }
+
+    private void updatePosition() {
+        mPan = Math.max(mPanMin, Math.min(mPlayer.getPan(), mPanMax));
+        mTilt = Math.max(mTiltMin, Math.min(mPlayer.getTilt(), mTiltMax));
+    }
+
+    public void close() throws IOException {
+        mChannel.close();
+        mSelector.close();
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : Endpoint.DEFAULT_PORT;
+        DeviceSimulator simulator = new DeviceSimulator(port);
+        System.out.println("PetDot simulator listening on port " + simulator.getLocalPort());
+        simulator.run();
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.horecka.petdot.core;
+
+/**
+ * Recognizes the "clear" gesture: two taps whose combined press time is short.
+ * <p/>
+ * <p>Every second press is evaluated, whether or not it completes a double tap, so a long
+ * drag followed by a tap does not count.</p>
+ */
+public class DoubleTapDetector {
+    public static final int MAX_DURATION = 200;
+
+    private long mStartTime;
+    private int mClickCount;
+    private long mDuration;
+
+    public void onDown(long timeMillis) {
+        mStartTime = timeMillis;
+        mClickCount++;
+    }
+
+    /**
+     * @return true if this release completes a double tap
+     */
+    public boolean onUp(long timeMillis) {
+        mDuration += timeMillis - mStartTime;
+        if (mClickCount < 2) return false;
+        boolean doubleTap = mDuration <= MAX_DURATION;
+        mClickCount = 0;
+        mDuration = 0;
+        return doubleTap;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.horecka.petdot.core;
+
+import java.util.Random;
+
+/**
+ * "Random (Drunkard's Walk)": the dot wanders without a goal, drifting and slowly changing
+ * direction, and bounces off the edges of the play area.
+ * <p/>
+ * <p>The velocity of each axis takes random kicks and is damped back towards rest, so the
+ * path is smooth rather than the jitter a random walk of the position itself would be.
+ * Speeds scale with the range of the axis so a small play area is covered as lively as a
+ * large one.</p>
+ */
+public class DrunkardsWalkGenerator implements MotionGenerator {
+    /** Strength of the random kicks, in ranges per second per square root second. */
+    private static final float WANDER = 0.5f;
+    /** How fast the velocity settles back towards rest, per second. */
+    private static final float DAMPING = 2f;
+    /** Fastest the dot moves, in ranges per second. */
+    private static final float MAX_SPEED = 0.8f;
+    /** A longer gap between ticks, e.g. a stalled thread, is stepped over as this long. */
+    private static final float MAX_STEP_SECONDS = 0.1f;
+
+    private final Random mRandom;
+    private float mPan;
+    private float mTilt;
+    /** In ranges per second. */
+    private float mPanVelocity;
+    private float mTiltVelocity;
+    private long mLastNanos;
+
+    public DrunkardsWalkGenerator(Random random) {
+        mRandom = random;
+    }
+
+    @Override
+    public void start(float pan, float tilt, MoveLimits limits, long nowNanos) {
+        mPan = CatAndMouseGenerator.clamp(pan, limits.xMin, limits.xMax);
+        mTilt = CatAndMouseGenerator.clamp(tilt, limits.yMin, limits.yMax);
+        mPanVelocity = 0;
+        mTiltVelocity = 0;
+        mLastNanos = nowNanos;
+    }
+
+    @Override
+    public void tick(long nowNanos, MoveLimits limits) {
+        float dt = Math.min(MAX_STEP_SECONDS, (nowNanos - mLastNanos) / 1e9f);
+        mLastNanos = nowNanos;
+        if (dt <= 0) return;
+        float kick = WANDER * (float) Math.sqrt(dt);
+        mPanVelocity = step(mPanVelocity, kick, dt);
+        mTiltVelocity = step(mTiltVelocity, kick, dt);
+
+        int panRange = limits.xMax - limits.xMin;
+        mPan += mPanVelocity * panRange * dt;
+        if (mPan < limits.xMin || mPan > limits.xMax) {
+            mPan = reflect(mPan, limits.xMin, limits.xMax);
+            mPanVelocity = -mPanVelocity;
+        }
+        int tiltRange = limits.yMax - limits.yMin;
+        mTilt += mTiltVelocity * tiltRange * dt;
+        if (mTilt < limits.yMin || mTilt > limits.yMax) {
+            mTilt = reflect(mTilt, limits.yMin, limits.yMax);
+            mTiltVelocity = -mTiltVelocity;
+        }
+    }
+
+    private float step(float velocity, float kick, float dt) {
+        velocity += (float) mRandom.nextGaussian() * kick - velocity * DAMPING * dt;
+        return velocity < -MAX_SPEED ? -MAX_SPEED : (velocity > MAX_SPEED ? MAX_SPEED : velocity);
+    }
+
+    /* Mirrors an overshoot back inside; also pulls the dot in after the limits shrank */
+    private static float reflect(float value, int min, int max) {
+        float mirrored = value < min ? 2 * min - value : 2 * max - value;
+        return CatAndMouseGenerator.clamp(mirrored, min, max);
+    }
+
+    @Override
+    public float getPan() {
+        return mPan;
+    }
+
+    @Override
+    public float getTilt() {
+        return mTilt;
+    }
+}
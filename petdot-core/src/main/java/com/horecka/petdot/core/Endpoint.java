@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.horecka.petdot.core;
+
+/**
+ * Address of a PetDot unit as entered in the IP Address and Port settings.
+ */
+public final class Endpoint {
+    public static final int DEFAULT_PORT = 11235;
+
+    public final String host;
+    public final int port;
+
+    public Endpoint(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * Parses a saved port setting, falling back to {@code defaultPort} when it is empty,
+     * not a number or outside 1..65535.
+     */
+    public static int parsePort(String port, int defaultPort) {
+        if (port == null || port.length() == 0 || port.length() > 5) return defaultPort;
+        int value = 0;
+        for (int i = 0; i < port.length(); i++) {
+            int digit = port.charAt(i) - '0';
+            if (digit < 0 || digit > 9) return defaultPort;
+            value = value * 10 + digit;
+        }
+        return value >= 1 && value <= 65535 ? value : defaultPort;
+    }
+
+    @Override
+    public String toString() {
+        return host + ":" + port;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Endpoint)) return false;
+        Endpoint other = (Endpoint) o;
+        return port == other.port && host.equals(other.host);
+    }
+
+    @Override
+    public int hashCode() {
+        return host.hashCode() * 31 + port;
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.horecka.petdot.core;
+
+import java.util.Random;
+
+/**
+ * Delays between reconnection attempts, doubling from a base delay up to a maximum.
+ * <p/>
+ * <p>Each delay is drawn at random from the upper half of its range, so the retries of
+ * several phones, or of one phone and a rebooting unit, do not fall into step, while a
+ * delay never collapses to nothing.</p>
+ * <p/>
+ * <p>Not thread safe.</p>
+ */
+public class ExponentialBackoff {
+    private final long mBaseNanos;
+    private final long mMaxNanos;
+    private final Random mRandom;
+    private int mAttempts;
+
+    public ExponentialBackoff(long baseNanos, long maxNanos, Random random) {
+        mBaseNanos = baseNanos;
+        mMaxNanos = maxNanos;
+        mRandom = random;
+    }
+
+    /**
+     * The delay before the next attempt; every call doubles the range of the following one.
+     */
+    public long nextDelayNanos() {
+        long ceiling = mBaseNanos << Math.min(mAttempts, 30);
+        if (ceiling > mMaxNanos || ceiling <= 0) ceiling = mMaxNanos;
+        mAttempts++;
+        long half = ceiling / 2;
+        return half + (long) (mRandom.nextDouble() * (ceiling - half));
+    }
+
+    /**
+     * Starts over from the base delay, after an attempt succeeded.
+     */
+    public void reset() {
+        mAttempts = 0;
+    }
+
+    public int getAttempts() {
+        return mAttempts;
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.horecka.petdot.core;
+
+/**
+ * A single value that is overwritten rather than accumulated, such as a queue depth or the
+ * size of a buffer. Setting it is one volatile write.
+ */
+public class Gauge {
+    private volatile long mValue;
+
+    public void set(long value) {
+        mValue = value;
+    }
+
+    public long get() {
+        return mValue;
+    }
+
+    public void reset() {
+        mValue = 0;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.horecka.petdot.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with fixed log-linear buckets.
+ * <p/>
+ * <p>Values are recorded in microseconds. Each power of two is split into four buckets, so
+ * a reported percentile is never off by more than 25%, across 1 us to about an hour in 128
+ * buckets. Recording is one array increment plus two counter updates and may be done from
+ * any number of threads; snapshots taken while others record are approximate but never
+ * corrupt.</p>
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int BUCKETS = 128;
+
+    private final AtomicLongArray mCounts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong mTotalMicros = new AtomicLong();
+    private final AtomicLong mMaxMicros = new AtomicLong();
+
+    public void recordNanos(long nanos) {
+        recordMicros(nanos / 1000);
+    }
+
+    public void recordMicros(long micros) {
+        if (micros < 0) micros = 0;
+        mCounts.incrementAndGet(bucketOf(micros));
+        mTotalMicros.addAndGet(micros);
+        long max = mMaxMicros.get();
+        while (micros > max && !mMaxMicros.compareAndSet(max, micros)) {
+            max = mMaxMicros.get();
+        }
+    }
+
+    static int bucketOf(long micros) {
+        if (micros < SUB_BUCKETS) return (int) micros;
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        int bucket = (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+        return bucket < BUCKETS ? bucket : BUCKETS - 1;
+    }
+
+    /**
+     * Smallest value that lands in {@code bucket}.
+     */
+    static long lowerBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int sub = bucket % SUB_BUCKETS;
+        return (1L << exponent) + ((long) sub << (exponent - SUB_BUCKET_BITS));
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) count += mCounts.get(i);
+        return count;
+    }
+
+    public long getMaxMicros() {
+        return mMaxMicros.get();
+    }
+
+    public long getMeanMicros() {
+        long count = getCount();
+        return count == 0 ? 0 : mTotalMicros.get() / count;
+    }
+
+    /**
+     * @param quantile between 0 and 1
+     * @return the lower bound of the bucket holding that quantile, in microseconds
+     */
+    public long getPercentileMicros(double quantile) {
+        long count = getCount();
+        if (count == 0) return 0;
+        long rank = (long) Math.ceil(quantile * count);
+        if (rank < 1) rank = 1;
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += mCounts.get(i);
+            if (seen >= rank) return lowerBoundOf(i);
+        }
+        return lowerBoundOf(BUCKETS - 1);
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) mCounts.set(i, 0);
+        mTotalMicros.set(0);
+        mMaxMicros.set(0);
+    }
+}
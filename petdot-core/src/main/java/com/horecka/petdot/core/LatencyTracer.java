@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.horecka.petdot.core;
+
+/**
+ * Per-stage latency of the touch-to-servo path.
+ * <p/>
+ * <p>Every sample is timestamped when the touch happened (MotionEvent event time), when it
+ * is enqueued for the sender, when it is encoded, when its packet is written to the socket
+ * and when the unit acknowledges that packet. The delta between each pair of consecutive
+ * stages, plus the end-to-end "finger to laser" time, goes into its own
+ * {@link LatencyHistogram}. All timestamps are {@link System#nanoTime()} values; on
+ * Android MotionEvent times are uptimeMillis, which is the same clock.</p>
+ */
+public class LatencyTracer {
+    public static final int EVENT_TO_ENQUEUE = 0;
+    public static final int ENQUEUE_TO_ENCODE = 1;
+    public static final int ENCODE_TO_WRITE = 2;
+    public static final int WRITE_TO_ACK = 3;
+    public static final int EVENT_TO_ACK = 4;
+    public static final int STAGES = 5;
+
+    private static final String[] STAGE_NAMES = {
+            "event->enqueue", "enqueue->encode", "encode->write", "write->ack", "event->ack"
+    };
+
+    private final LatencyHistogram[] mStages = new LatencyHistogram[STAGES];
+
+    public LatencyTracer() {
+        for (int i = 0; i < STAGES; i++) mStages[i] = new LatencyHistogram();
+    }
+
+    public void record(int stage, long fromNanos, long toNanos) {
+        mStages[stage].recordNanos(toNanos - fromNanos);
+    }
+
+    public LatencyHistogram getStage(int stage) {
+        return mStages[stage];
+    }
+
+    public static String getStageName(int stage) {
+        return STAGE_NAMES[stage];
+    }
+
+    public void reset() {
+        for (LatencyHistogram stage : mStages) stage.reset();
+    }
+
+    /**
+     * Appends one line per stage: sample count and p50/p90/p99/max in milliseconds.
+     */
+    public void dump(StringBuilder out) {
+        out.append(String.format("%-16s %7s %7s %7s %7s %7s%n",
+                "stage", "count", "p50", "p90", "p99", "max"));
+        for (int i = 0; i < STAGES; i++) {
+            LatencyHistogram h = mStages[i];
+            out.append(String.format("%-16s %7d %7.2f %7.2f %7.2f %7.2f%n",
+                    STAGE_NAMES[i], h.getCount(),
+                    h.getPercentileMicros(0.5) / 1000.0, h.getPercentileMicros(0.9) / 1000.0,
+                    h.getPercentileMicros(0.99) / 1000.0, h.getMaxMicros() / 1000.0));
+        }
+    }
+}
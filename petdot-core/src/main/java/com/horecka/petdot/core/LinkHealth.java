@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.horecka.petdot.core;
+
+/**
+ * Round trip, jitter and loss of the link to the unit, measured with heartbeats.
+ * <p/>
+ * <p>The sender thread sends a {@link CommandProtocol#TYPE_PING} every
+ * {@link CommandSender#HEARTBEAT_NANOS} and reports it here, and reports every
+ * {@link CommandProtocol#TYPE_PONG} that comes back. Because a pong echoes the ping's own
+ * timestamp the round trip is pure network plus the unit's turnaround, with none of the
+ * batching or rendering the touch path adds; comparing it with the touch-to-ack latency
+ * tells network problems from app problems.</p>
+ * <p/>
+ * <p>Jitter is the smoothed difference between consecutive round trips (as in RFC 3550)
+ * and loss the share of the last {@link #WINDOW} pings that went unanswered for a second.
+ * Written by the sender thread only; the results can be read from any thread.</p>
+ */
+public class LinkHealth {
+    public static final int WINDOW = 16;
+    /** A ping unanswered for this long counts as lost. */
+    public static final long REPLY_TIMEOUT_NANOS = 1000000000L;
+    /** Loss and round trip at or above which a responding link is degraded. */
+    public static final float DEGRADED_LOSS = 0.1f;
+    public static final long DEGRADED_RTT_NANOS = 100000000L;
+
+    private final int[] mSequences = new int[WINDOW];
+    private final long[] mSentTimes = new long[WINDOW];
+    private final boolean[] mAnswered = new boolean[WINDOW];
+    private int mPingCount;
+    private long mPreviousRtt;
+
+    private volatile boolean mHasReply;
+    private volatile long mRtt;
+    private volatile long mJitter;
+    private volatile float mLoss;
+    private volatile long mLastReplyNanos;
+
+    public synchronized void reset() {
+        mPingCount = 0;
+        mHasReply = false;
+        mRtt = 0;
+        mJitter = 0;
+        mLoss = 0;
+    }
+
+    public synchronized void onPingSent(int sequence, long nowNanos) {
+        int slot = sequence & (WINDOW - 1);
+        mSequences[slot] = sequence;
+        mSentTimes[slot] = nowNanos;
+        mAnswered[slot] = false;
+        if (mPingCount < WINDOW) mPingCount++;
+        updateLoss(nowNanos);
+    }
+
+    public synchronized void onPong(int sequence, long sentNanos, long nowNanos) {
+        int slot = sequence & (WINDOW - 1);
+        if (mSequences[slot] != sequence || mAnswered[slot]) return;
+        mAnswered[slot] = true;
+        long rtt = nowNanos - sentNanos;
+        if (!mHasReply) {
+            mRtt = rtt;
+            mJitter = 0;
+        } else {
+            mRtt += (rtt - mRtt) / 8;
+            mJitter += (Math.abs(rtt - mPreviousRtt) - mJitter) / 16;
+        }
+        mPreviousRtt = rtt;
+        mLastReplyNanos = nowNanos;
+        mHasReply = true;
+        updateLoss(nowNanos);
+    }
+
+    private void updateLoss(long now) {
+        int due = 0;
+        int lost = 0;
+        for (int i = 0; i < mPingCount; i++) {
+            if (now - mSentTimes[i] < REPLY_TIMEOUT_NANOS && !mAnswered[i]) continue;
+            due++;
+            if (!mAnswered[i]) lost++;
+        }
+        mLoss = due == 0 ? 0 : (float) lost / due;
+    }
+
+    public boolean hasReply() {
+        return mHasReply;
+    }
+
+    /**
+     * Whether the unit answered a heartbeat within the last {@link #REPLY_TIMEOUT_NANOS}.
+     */
+    public boolean isResponding(long nowNanos) {
+        return mHasReply && nowNanos - mLastReplyNanos < REPLY_TIMEOUT_NANOS;
+    }
+
+    /**
+     * Whether the unit responds, but too slowly or losing too many packets to follow
+     * the finger well.
+     */
+    public boolean isDegraded(long nowNanos) {
+        return isResponding(nowNanos) && (mLoss >= DEGRADED_LOSS || mRtt >= DEGRADED_RTT_NANOS);
+    }
+
+    /**
+     * Smoothed round trip.
+     */
+    public long getRttNanos() {
+        return mRtt;
+    }
+
+    public long getJitterNanos() {
+        return mJitter;
+    }
+
+    /**
+     * Share of recent heartbeats lost, between 0 and 1.
+     */
+    public float getLoss() {
+        return mLoss;
+    }
+
+    public long getLastReplyNanos() {
+        return mLastReplyNanos;
+    }
+
+    /**
+     * Appends a one line summary such as "RTT 3.2 ms, jitter 0.4 ms, loss 0%", or how long
+     * the unit has been silent.
+     */
+    public void appendSummary(StringBuilder out, long nowNanos) {
+        if (!mHasReply) {
+            out.append("No reply from unit");
+        } else if (!isResponding(nowNanos)) {
+            out.append(String.format("No reply for %d s",
+                    (nowNanos - mLastReplyNanos) / 1000000000L));
+        } else {
+            out.append(String.format("RTT %.1f ms, jitter %.1f ms, loss %d%%",
+                    mRtt / 1e6, mJitter / 1e6, Math.round(mLoss * 100)));
+        }
+    }
+}
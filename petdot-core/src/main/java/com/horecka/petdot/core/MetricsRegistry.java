@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.horecka.petdot.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Named {@link StripedCounter}s, {@link Gauge}s and {@link LatencyHistogram}s.
+ * <p/>
+ * <p>Registering is a cold path and takes a lock; code on a hot path looks its metrics up
+ * once, keeps the references and updates them directly, which never locks or allocates.
+ * Asking for an existing name returns the same metric.</p>
+ */
+public class MetricsRegistry {
+    private final List<String> mNames = new ArrayList<String>();
+    private final List<Object> mMetrics = new ArrayList<Object>();
+
+    public StripedCounter counter(String name) {
+        return register(name, StripedCounter.class);
+    }
+
+    public Gauge gauge(String name) {
+        return register(name, Gauge.class);
+    }
+
+    public LatencyHistogram histogram(String name) {
+        return register(name, LatencyHistogram.class);
+    }
+
+    private synchronized <T> T register(String name, Class<T> type) {
+        int index = mNames.indexOf(name);
+        if (index >= 0) {
+            Object metric = mMetrics.get(index);
+            if (!type.isInstance(metric)) {
+                throw new IllegalArgumentException(name + " is already registered as "
+                        + metric.getClass().getSimpleName());
+            }
+            return type.cast(metric);
+        }
+        T metric;
+        try {
+            metric = type.newInstance();
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+        mNames.add(name);
+        mMetrics.add(metric);
+        return metric;
+    }
+
+    /**
+     * Zeroes every metric.
+     */
+    public synchronized void reset() {
+        for (Object metric : mMetrics) {
+            if (metric instanceof StripedCounter) {
+                ((StripedCounter) metric).reset();
+            } else if (metric instanceof Gauge) {
+                ((Gauge) metric).reset();
+            } else {
+                ((LatencyHistogram) metric).reset();
+            }
+        }
+    }
+
+    /**
+     * Appends one line per metric in registration order: the value of counters and gauges,
+     * and count and p50/p90/p99/max in milliseconds of histograms.
+     */
+    public synchronized void dump(StringBuilder out) {
+        for (int i = 0; i < mNames.size(); i++) {
+            String name = mNames.get(i);
+            Object metric = mMetrics.get(i);
+            if (metric instanceof StripedCounter) {
+                out.append(String.format("%-20s %d%n", name, ((StripedCounter) metric).get()));
+            } else if (metric instanceof Gauge) {
+                out.append(String.format("%-20s %d%n", name, ((Gauge) metric).get()));
+            } else {
+                LatencyHistogram h = (LatencyHistogram) metric;
+                out.append(String.format("%-20s n=%d p50=%.2f p90=%.2f p99=%.2f max=%.2f%n",
+                        name, h.getCount(),
+                        h.getPercentileMicros(0.5) / 1000.0, h.getPercentileMicros(0.9) / 1000.0,
+                        h.getPercentileMicros(0.99) / 1000.0, h.getMaxMicros() / 1000.0));
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.horecka.petdot.core;
+
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Moves the laser on its own in the "Random" control modes.
+ * <p/>
+ * <p>A dedicated thread ticks at a fixed {@link #TICK_NANOS rate} against absolute
+ * deadlines, so the rate does not drift with the time each tick takes, and hands each
+ * position to the {@link CommandSender} stamped with its deadline rather than with when
+ * the thread happened to wake up. A tick that comes more than a whole tick late, e.g.
+ * after the process was descheduled, drops the missed ones instead of catching up in a
+ * burst. Nothing here runs on or waits for the UI thread, so the motion carries on while
+ * the activity is busy or in the background.</p>
+ * <p/>
+ * <p>Every tick reads the current {@link PetDotConfig} once: the control mode picks the
+ * {@link MotionGenerator} and the limits bound it, so both take effect within a tick. A
+ * tick allocates nothing. In manual mode the thread sleeps until
+ * {@link #configChanged()}.</p>
+ */
+public class MotionEngine {
+    /** 100 Hz. */
+    public static final long TICK_NANOS = 10000000L;
+    /** How often a random mode checks whether the sender was started. */
+    private static final long IDLE_POLL_NANOS = 250000000L;
+
+    private final ConfigHolder mConfig;
+    private final CommandSender mSender;
+    private final PetDotMetrics mMetrics;
+    /** Indexed by control mode; null for modes the engine does not drive. */
+    private final MotionGenerator[] mGenerators;
+    private volatile Ticker mTicker;
+
+    public MotionEngine(CommandSender sender) {
+        this(sender, new CatAndMouseGenerator(new Random()),
+                new DrunkardsWalkGenerator(new Random()));
+    }
+
+    public MotionEngine(CommandSender sender, MotionGenerator catAndMouse,
+            MotionGenerator drunkardsWalk) {
+        mSender = sender;
+        mConfig = sender.getConfig();
+        mMetrics = sender.getMetrics();
+        mGenerators = new MotionGenerator[PetDotConfig.MODE_DRUNKARDS_WALK + 1];
+        mGenerators[PetDotConfig.MODE_CAT_AND_MOUSE] = catAndMouse;
+        mGenerators[PetDotConfig.MODE_DRUNKARDS_WALK] = drunkardsWalk;
+    }
+
+    /**
+     * Starts the engine thread if it is not running. It follows the control mode from then
+     * on, until {@link #stop()}.
+     */
+    public synchronized void start() {
+        if (mTicker != null) return;
+        mTicker = new Ticker();
+        mTicker.start();
+    }
+
+    /**
+     * Stops the engine thread without waiting for it to exit.
+     */
+    public synchronized void stop() {
+        Ticker ticker = mTicker;
+        if (ticker == null) return;
+        mTicker = null;
+        ticker.quit();
+    }
+
+    public boolean isRunning() {
+        return mTicker != null;
+    }
+
+    /**
+     * Has the engine pick up a changed control mode now, waking it from manual mode.
+     */
+    public void configChanged() {
+        Ticker ticker = mTicker;
+        if (ticker != null) LockSupport.unpark(ticker);
+    }
+
+    private class Ticker extends Thread {
+        private volatile boolean mQuit;
+        private MotionGenerator mGenerator;
+        /** Where the last tick left the laser; NaN until the first one. */
+        private float mPan = Float.NaN;
+        private float mTilt = Float.NaN;
+
+        Ticker() {
+            super("PetDot-motion");
+        }
+
+        void quit() {
+            mQuit = true;
+            LockSupport.unpark(this);
+        }
+
+        @Override
+        public void run() {
+            long deadline = System.nanoTime();
+            while (!mQuit) {
+                PetDotConfig config = mConfig.get();
+                MotionGenerator generator = mGenerators[config.controlMode];
+                if (generator == null || !mSender.isRunning()) {
+                    // the next run starts afresh from where this one stopped
+                    mGenerator = null;
+                    if (generator == null) {
+                        LockSupport.park(this);
+                    } else {
+                        LockSupport.parkNanos(this, IDLE_POLL_NANOS);
+                    }
+                    deadline = System.nanoTime();
+                    continue;
+                }
+                if (generator != mGenerator) {
+                    mGenerator = generator;
+                    start(generator, config.limits, deadline);
+                }
+                generator.tick(deadline, config.limits);
+                mPan = generator.getPan();
+                mTilt = generator.getTilt();
+                mSender.offerPosition(mPan, mTilt, deadline);
+                mMetrics.motionTicks.increment();
+
+                deadline += TICK_NANOS;
+                long wait = deadline - System.nanoTime();
+                if (wait < -TICK_NANOS) {
+                    mMetrics.motionTicksLate.increment();
+                    deadline = System.nanoTime();
+                }
+                // configChanged() may unpark early; the mode still changes at the next tick
+                while (wait > 0 && !mQuit) {
+                    LockSupport.parkNanos(this, wait);
+                    wait = deadline - System.nanoTime();
+                }
+            }
+        }
+
+        private void start(MotionGenerator generator, MoveLimits limits, long nowNanos) {
+            if (Float.isNaN(mPan)) {
+                mPan = (limits.xMin + limits.xMax) / 2f;
+                mTilt = (limits.yMin + limits.yMax) / 2f;
+            }
+            generator.start(mPan, mTilt, limits, nowNanos);
+        }
+    }
+}
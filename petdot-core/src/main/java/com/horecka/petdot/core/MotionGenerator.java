@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.horecka.petdot.core;
+
+/**
+ * Produces the path of one autonomous {@link PetDotConfig#controlMode control mode}, one
+ * tick at a time, for the {@link MotionEngine}.
+ * <p/>
+ * <p>Implementations keep their state in primitive fields and must not allocate in
+ * {@link #tick}; the position is read back through {@link #getPan()} and
+ * {@link #getTilt()}. They are only ever used from the engine thread. Limits are passed
+ * on every tick since they can change at any time; the position must always be within
+ * the latest ones.</p>
+ */
+public interface MotionGenerator {
+    /**
+     * Starts a new run from the given position, e.g. where the previous mode left the laser.
+     */
+    void start(float pan, float tilt, MoveLimits limits, long nowNanos);
+
+    /**
+     * Advances the position to {@code nowNanos}.
+     */
+    void tick(long nowNanos, MoveLimits limits);
+
+    /** In degrees, within the limits of the last tick. */
+    float getPan();
+
+    /** In degrees, within the limits of the last tick. */
+    float getTilt();
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.horecka.petdot.core;
+
+/**
+ * Servo travel limits in degrees, one min/max pair per axis.
+ * <p/>
+ * <p>Persisted as twelve digits, {@code xmin xmax ymin ymax} at three digits each, e.g.
+ * {@code "000180000180"}. Parsing happens once per settings change, never per sample.</p>
+ */
+public final class MoveLimits {
+    public static final int MIN = 0;
+    public static final int MAX = 180;
+    public static final MoveLimits DEFAULT = new MoveLimits(MIN, MAX, MIN, MAX);
+
+    private static final int FIELD_LENGTH = 3;
+    private static final int STRING_LENGTH = FIELD_LENGTH * 4;
+
+    public final int xMin;
+    public final int xMax;
+    public final int yMin;
+    public final int yMax;
+
+    public MoveLimits(int xMin, int xMax, int yMin, int yMax) {
+        this.xMin = xMin;
+        this.xMax = xMax;
+        this.yMin = yMin;
+        this.yMax = yMax;
+    }
+
+    /**
+     * @return the limits, or null if the string is malformed or out of range
+     */
+    public static MoveLimits parse(String stateString) {
+        if (stateString == null || stateString.length() != STRING_LENGTH) return null;
+        int xMin = parseField(stateString, 0);
+        int xMax = parseField(stateString, 1);
+        int yMin = parseField(stateString, 2);
+        int yMax = parseField(stateString, 3);
+        if (xMin < MIN || yMin < MIN || xMax > MAX || yMax > MAX) return null;
+        if (xMin >= xMax || yMin >= yMax) return null;
+        return new MoveLimits(xMin, xMax, yMin, yMax);
+    }
+
+    /**
+     * @return the limits, or {@link #DEFAULT} if the string is malformed or out of range
+     */
+    public static MoveLimits parseOrDefault(String stateString) {
+        MoveLimits limits = parse(stateString);
+        return limits == null ? DEFAULT : limits;
+    }
+
+    private static int parseField(String s, int field) {
+        int value = 0;
+        for (int i = field * FIELD_LENGTH; i < (field + 1) * FIELD_LENGTH; i++) {
+            int digit = s.charAt(i) - '0';
+            if (digit < 0 || digit > 9) return -1;
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static void appendField(StringBuilder sb, int value) {
+        sb.append((char) ('0' + value / 100 % 10));
+        sb.append((char) ('0' + value / 10 % 10));
+        sb.append((char) ('0' + value % 10));
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(STRING_LENGTH);
+        appendField(sb, xMin);
+        appendField(sb, xMax);
+        appendField(sb, yMin);
+        appendField(sb, yMax);
+        return sb.toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof MoveLimits)) return false;
+        MoveLimits other = (MoveLimits) o;
+        return xMin == other.xMin && xMax == other.xMax
+                && yMin == other.yMin && yMax == other.yMax;
+    }
+
+    @Override
+    public int hashCode() {
+        return ((xMin * 31 + xMax) * 31 + yMin) * 31 + yMax;
+    }
+}
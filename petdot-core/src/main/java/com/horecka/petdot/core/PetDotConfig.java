@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.horecka.petdot.core;
+
+/**
+ * Everything the app is configured with, decoded once: the unit's endpoint, the servo
+ * limits and axis orientation, the control mode and the sender's rates.
+ * <p/>
+ * <p>Immutable. A change makes a modified copy with one of the {@code with} methods, which
+ * is then published through a {@link ConfigHolder}; a thread that reads the holder once
+ * sees one consistent configuration however often it is replaced meanwhile.</p>
+ */
+public final class PetDotConfig {
+    public static final int MODE_MANUAL = 0;
+    public static final int MODE_CAT_AND_MOUSE = 1;
+    public static final int MODE_DRUNKARDS_WALK = 2;
+
+    public static final PetDotConfig DEFAULT = new PetDotConfig(
+            new Endpoint("0.0.0.0", Endpoint.DEFAULT_PORT), MoveLimits.DEFAULT,
+            AxisOrientation.DEFAULT, MODE_MANUAL, CommandSender.DEFAULT_BATCH_SAMPLES,
+            CommandSender.DEFAULT_BATCH_NANOS, CommandSender.DEFAULT_REDUNDANCY, true);
+
+    public final Endpoint endpoint;
+    public final MoveLimits limits;
+    public final AxisOrientation axes;
+    /** One of the {@code MODE_} constants, in the order of the Control Mode options. */
+    public final int controlMode;
+    /** Samples per trajectory packet before it is sent early, see {@link CommandSender}. */
+    public final int batchSamples;
+    /** How long the oldest sample may wait for its packet. */
+    public final long batchNanos;
+    /** Samples each packet repeats from the previous ones. */
+    public final int redundancy;
+    /** Whether the batching follows the measured round trip and loss. */
+    public final boolean adaptiveRate;
+
+    private PetDotConfig(Endpoint endpoint, MoveLimits limits, AxisOrientation axes,
+                         int controlMode, int batchSamples, long batchNanos, int redundancy,
+                         boolean adaptiveRate) {
+        this.endpoint = endpoint;
+        this.limits = limits;
+        this.axes = axes;
+        this.controlMode = controlMode;
+        this.batchSamples = batchSamples;
+        this.batchNanos = batchNanos;
+        this.redundancy = redundancy;
+        this.adaptiveRate = adaptiveRate;
+    }
+
+    public PetDotConfig withEndpoint(Endpoint endpoint) {
+        return new PetDotConfig(endpoint, limits, axes, controlMode, batchSamples, batchNanos,
+                redundancy, adaptiveRate);
+    }
+
+    public PetDotConfig withLimits(MoveLimits limits) {
+        return new PetDotConfig(endpoint, limits, axes, controlMode, batchSamples, batchNanos,
+                redundancy, adaptiveRate);
+    }
+
+    public PetDotConfig withAxes(AxisOrientation axes) {
+        return new PetDotConfig(endpoint, limits, axes, controlMode, batchSamples, batchNanos,
+                redundancy, adaptiveRate);
+    }
+
+    /**
+     * An unknown mode falls back to {@link #MODE_MANUAL}.
+     */
+    public PetDotConfig withControlMode(int controlMode) {
+        if (controlMode < MODE_MANUAL || controlMode > MODE_DRUNKARDS_WALK) {
+            controlMode = MODE_MANUAL;
+        }
+        return new PetDotConfig(endpoint, limits, axes, controlMode, batchSamples, batchNanos,
+                redundancy, adaptiveRate);
+    }
+
+    /**
+     * @param maxSamples clamped to 1..{@link CommandProtocol#MAX_SAMPLES}
+     */
+    public PetDotConfig withBatching(int maxSamples, long maxDelayNanos) {
+        return new PetDotConfig(endpoint, limits, axes, controlMode,
+                Math.max(1, Math.min(maxSamples, CommandProtocol.MAX_SAMPLES)),
+                Math.max(0, maxDelayNanos), redundancy, adaptiveRate);
+    }
+
+    /**
+     * @param samples clamped to 0..{@link CommandSender#MAX_REDUNDANCY}
+     */
+    public PetDotConfig withRedundancy(int samples) {
+        return new PetDotConfig(endpoint, limits, axes, controlMode, batchSamples, batchNanos,
+                Math.max(0, Math.min(samples, CommandSender.MAX_REDUNDANCY)), adaptiveRate);
+    }
+
+    public PetDotConfig withAdaptiveRate(boolean adaptive) {
+        return new PetDotConfig(endpoint, limits, axes, controlMode, batchSamples, batchNanos,
+                redundancy, adaptive);
+    }
+
+    @Override
+    public String toString() {
+        return endpoint + " limits " + limits + " axes " + axes + " mode " + controlMode
+                + " batch " + batchSamples + "/" + batchNanos / 1000000L + "ms"
+                + " redundancy " + redundancy + (adaptiveRate ? " adaptive" : "");
+    }
+}
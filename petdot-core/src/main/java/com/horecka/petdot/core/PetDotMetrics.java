@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.horecka.petdot.core;
+
+/**
+ * The metrics of the PetDot pipeline, from touch input through rendering to the wire.
+ * <p/>
+ * <p>One instance is shared by everything that takes part in the pipeline. Each metric is a
+ * field so that updating it costs an uncontended atomic add or a volatile write and no
+ * lookup.</p>
+ */
+public class PetDotMetrics extends MetricsRegistry {
+    /** Touch samples handed to the command sender. */
+    public final StripedCounter touchSamples = counter("touch.samples");
+    /** Touch samples superseded by a newer one before they were sent. */
+    public final StripedCounter samplesCoalesced = counter("touch.coalesced");
+    /** Touch samples lost because the sender queue was full or no transform was set. */
+    public final StripedCounter samplesDropped = counter("touch.dropped");
+    /** Positions generated by the motion engine in the random control modes. */
+    public final StripedCounter motionTicks = counter("motion.ticks");
+    /** Motion engine ticks more than a whole tick late; the missed ones are skipped. */
+    public final StripedCounter motionTicksLate = counter("motion.late");
+    /** Datagrams written to the socket. */
+    public final StripedCounter packetsSent = counter("net.packets");
+    /** Payload bytes written to the socket. */
+    public final StripedCounter bytesSent = counter("net.bytes");
+    /** Datagrams not written because the send buffer was full or the unit was not listening. */
+    public final StripedCounter sendsFailed = counter("net.send_failed");
+    /** Samples repeated from earlier packets to cover losses. */
+    public final StripedCounter samplesRepeated = counter("net.repeated");
+    /** Datagrams the unit never acknowledged. */
+    public final StripedCounter packetsLost = counter("net.lost");
+    /** Smoothed round trip to the unit, in microseconds. */
+    public final Gauge roundTrip = gauge("net.rtt_us");
+    /** Time between packets the rate controller currently allows, in microseconds. */
+    public final Gauge sendInterval = gauge("net.interval_us");
+    /** Touch samples the render thread never got because its queue was full. */
+    public final StripedCounter renderSamplesDropped = counter("render.dropped");
+    /** Frames composited to the screen. */
+    public final StripedCounter renderFrames = counter("render.frames");
+    /** Fade steps applied to the trail. */
+    public final StripedCounter fadeFrames = counter("render.fades");
+    /** Time spent compositing one frame. */
+    public final LatencyHistogram frameTime = histogram("render.frame_time");
+    /** Offscreen bitmaps allocated for the trail; each one is a full screen of garbage later. */
+    public final StripedCounter bitmapAllocations = counter("alloc.bitmaps");
+    /** Size of the current offscreen trail bitmap. */
+    public final Gauge bitmapBytes = gauge("alloc.bitmap_bytes");
+    /** Direct datagram buffers allocated; stays flat once the pool is warm. */
+    public final StripedCounter bufferAllocations = counter("alloc.net_buffers");
+}
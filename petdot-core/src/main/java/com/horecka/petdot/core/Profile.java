@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.horecka.petdot.core;
+
+/**
+ * A named set of per-room settings: the unit's endpoint, its move limits and its axis
+ * orientation.
+ * <p/>
+ * <p>Persisted by {@link ProfileStore} as one line of tab separated fields,
+ * {@code name host port limits axes}, with the limits and axes in their own persisted
+ * formats, e.g. {@code "Kitchen\t192.168.1.20\t11235\t000180000180\t000"}.</p>
+ */
+public final class Profile {
+    private static final int FIELDS = 5;
+
+    public final String name;
+    public final Endpoint endpoint;
+    public final MoveLimits limits;
+    public final AxisOrientation axes;
+
+    /**
+     * @param name tabs and line breaks are replaced with spaces
+     */
+    public Profile(String name, Endpoint endpoint, MoveLimits limits, AxisOrientation axes) {
+        this.name = name.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+        this.endpoint = endpoint;
+        this.limits = limits;
+        this.axes = axes;
+    }
+
+    /**
+     * The profile of the settings in {@code config}.
+     */
+    public static Profile of(String name, PetDotConfig config) {
+        return new Profile(name, config.endpoint, config.limits, config.axes);
+    }
+
+    /**
+     * @return the profile, or null if the line is malformed
+     */
+    public static Profile parse(String line) {
+        String[] fields = new String[FIELDS];
+        int start = 0;
+        for (int i = 0; i < FIELDS; i++) {
+            int end = i < FIELDS - 1 ? line.indexOf('\t', start) : line.length();
+            if (end < 0) return null;
+            fields[i] = line.substring(start, end);
+            start = end + 1;
+        }
+        if (fields[0].length() == 0 || fields[1].length() == 0) return null;
+        int port = Endpoint.parsePort(fields[2], -1);
+        MoveLimits limits = MoveLimits.parse(fields[3]);
+        AxisOrientation axes = AxisOrientation.parse(fields[4]);
+        if (port < 0 || limits == null || axes == null) return null;
+        return new Profile(fields[0], new Endpoint(fields[1], port), limits, axes);
+    }
+
+    @Override
+    public String toString() {
+        return name + '\t' + endpoint.host + '\t' + endpoint.port + '\t' + limits + '\t' + axes;
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.horecka.petdot.core;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Named {@link Profile}s, kept in one small text file: a version line followed by one
+ * profile per line.
+ * <p/>
+ * <p>The file is read the first time the profiles are needed, not when the store is
+ * created, so that starting the app never waits on it. Changes apply in memory at once
+ * and are written behind on a background thread (see {@link WriteBehind}) to a temporary
+ * file that then replaces the old one, so a crash mid-write never loses the profiles.</p>
+ * <p/>
+ * <p>Nor does a file that could not be read in full: lines that do not parse are written
+ * back as they were, a read that failed is tried again the next time the profiles are
+ * needed, and a store that had to take a change without having read the file never
+ * writes it.</p>
+ * <p/>
+ * <p>Thread safe.</p>
+ */
+public class ProfileStore {
+    private static final String HEADER = "petdot-profiles 1";
+    private static final String CHARSET = "UTF-8";
+    private static final long COALESCE_MILLIS = 100;
+
+    private final File mFile;
+    private final Object mWriteLock = new Object();
+    private final WriteBehind mWriteBehind = new WriteBehind("PetDot-profiles",
+            COALESCE_MILLIS, new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            });
+    // guarded by this, null until read
+    private List<Profile> mProfiles;
+    // guarded by this; lines of the file that did not parse
+    private List<String> mUnparsed = Collections.emptyList();
+    // guarded by this; false once a change was made to profiles that were not all read
+    private boolean mWritable = true;
+    private int mVersion;
+    // guarded by mWriteLock
+    private int mWrittenVersion;
+
+    public ProfileStore(File file) {
+        mFile = file;
+    }
+
+    /**
+     * All profiles in the order they were first saved. Reads the file on the first call,
+     * and again after a read that failed; call it off the UI thread until it succeeded.
+     */
+    public synchronized List<Profile> getProfiles() {
+        if (mProfiles != null) return mProfiles;
+        List<Profile> profiles = new ArrayList<Profile>();
+        List<String> unparsed = new ArrayList<String>();
+        if (!read(profiles, unparsed)) {
+            // as much as could be read, but not kept
+            return Collections.unmodifiableList(profiles);
+        }
+        mProfiles = Collections.unmodifiableList(profiles);
+        mUnparsed = unparsed;
+        return mProfiles;
+    }
+
+    /**
+     * Adds a profile or replaces the one with the same name. Returns at once.
+     */
+    public synchronized void put(Profile profile) {
+        List<Profile> profiles = new ArrayList<Profile>(getProfiles());
+        // written now, the profiles that could not be read would be gone
+        if (mProfiles == null) mWritable = false;
+        int index = 0;
+        while (index < profiles.size() && !profiles.get(index).name.equals(profile.name)) {
+            index++;
+        }
+        if (index < profiles.size()) {
+            profiles.set(index, profile);
+        } else {
+            profiles.add(profile);
+        }
+        mProfiles = Collections.unmodifiableList(profiles);
+        mVersion++;
+        mWriteBehind.changed();
+    }
+
+    /**
+     * Writes any change not written yet and returns once it is on disk.
+     *
+     * @return false if the file could not be written, and is retried with the next change,
+     * or is not written at all because it could not be read
+     */
+    public boolean flush() {
+        synchronized (mWriteLock) {
+            List<Profile> profiles;
+            List<String> unparsed;
+            int version;
+            synchronized (this) {
+                if (!mWritable) return false;
+                profiles = mProfiles;
+                unparsed = mUnparsed;
+                version = mVersion;
+            }
+            if (version == mWrittenVersion) return true;
+            try {
+                write(profiles, unparsed);
+            } catch (IOException e) {
+                return false;
+            }
+            mWrittenVersion = version;
+            return true;
+        }
+    }
+
+    /**
+     * Reads the file into {@code profiles}, and the lines that are not a profile into
+     * {@code unparsed}.
+     *
+     * @return false if the file could not be read in full, or is in a format this version
+     * does not know
+     */
+    private boolean read(List<Profile> profiles, List<String> unparsed) {
+        BufferedReader in = null;
+        try {
+            in = new BufferedReader(new InputStreamReader(new FileInputStream(mFile), CHARSET));
+            String header = in.readLine();
+            // an empty file is one that was never written
+            if (header == null) return true;
+            if (!HEADER.equals(header)) return false;
+            String line;
+            while ((line = in.readLine()) != null) {
+                // a malformed line costs that profile, not the others
+                Profile profile = Profile.parse(line);
+                if (profile != null) {
+                    profiles.add(profile);
+                } else if (line.length() > 0) {
+                    unparsed.add(line);
+                }
+            }
+            return true;
+        } catch (FileNotFoundException e) {
+            // no profiles saved yet, unless the file is there but cannot be opened
+            return !mFile.exists();
+        } catch (IOException e) {
+            return false;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private void write(List<Profile> profiles, List<String> unparsed) throws IOException {
+        File temp = new File(mFile.getPath() + ".tmp");
+        FileOutputStream stream = new FileOutputStream(temp);
+        try {
+            Writer out = new OutputStreamWriter(stream, CHARSET);
+            out.write(HEADER);
+            out.write('\n');
+            for (Profile profile : profiles) {
+                out.write(profile.toString());
+                out.write('\n');
+            }
+            for (String line : unparsed) {
+                out.write(line);
+                out.write('\n');
+            }
+            out.flush();
+            stream.getFD().sync();
+        } finally {
+            closeQuietly(stream);
+        }
+        if (!temp.renameTo(mFile)) throw new IOException("cannot replace " + mFile);
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // nothing useful left to do with it
+        }
+    }
+}
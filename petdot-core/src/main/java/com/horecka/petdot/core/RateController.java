@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.horecka.petdot.core;
+
+/**
+ * Congestion-aware packet rate, adjusted AIMD-style from acknowledgements.
+ * <p/>
+ * <p>While acknowledgements come back without loss and without the round trip growing
+ * beyond its recent minimum, the rate rises additively by {@link #INCREASE_PER_SECOND}
+ * packets per second every second. A lost packet, or a round trip inflated by queueing,
+ * halves it, at most once per {@link #DECREASE_HOLDOFF_NANOS} or two round trips so one
+ * congestion episode is only answered once. Under contention the laser therefore gets
+ * fewer, fuller trajectory packets instead of a growing queue in front of the access
+ * point.</p>
+ * <p/>
+ * <p>Also keeps the smoothed round trip, its variation and a loss rate for others to
+ * read. Not thread safe; it belongs to the sender thread.</p>
+ */
+public class RateController {
+    /** Fastest rate, 60 packets a second. */
+    public static final long MIN_INTERVAL_NANOS = 16666667L;
+    /** Slowest rate, 5 packets a second. */
+    public static final long MAX_INTERVAL_NANOS = 200000000L;
+    static final float INCREASE_PER_SECOND = 10f;
+    static final long DECREASE_HOLDOFF_NANOS = 100000000L;
+    /** Queueing delay above the minimum round trip that counts as congestion. */
+    private static final long QUEUE_DELAY_NANOS = 20000000L;
+    /** The minimum round trip is re-learned over windows this long, routes change. */
+    private static final long MIN_RTT_WINDOW_NANOS = 10000000000L;
+    /** Touch input runs at up to about 240 Hz, one sample every 4 ms. */
+    private static final long SAMPLE_INTERVAL_NANOS = 4000000L;
+    private static final float MIN_RATE = 1e9f / MAX_INTERVAL_NANOS;
+    private static final float MAX_RATE = 1e9f / MIN_INTERVAL_NANOS;
+
+    private float mRate;
+    private long mLastIncrease;
+    private long mLastDecrease;
+    private boolean mHasRtt;
+    private long mSmoothedRtt;
+    private long mRttVariation;
+    private long mMinRtt;
+    private long mWindowMinRtt;
+    private long mWindowStart;
+    private float mLossRate;
+
+    /**
+     * @param initialIntervalNanos time between packets to start from
+     */
+    public RateController(long initialIntervalNanos) {
+        mRate = clampRate(1e9f / Math.max(1, initialIntervalNanos));
+    }
+
+    /**
+     * A packet was acknowledged {@code rttNanos} after it was written.
+     */
+    public void onAck(long rttNanos, long nowNanos) {
+        updateRtt(rttNanos, nowNanos);
+        mLossRate -= mLossRate / 16;
+        if (mSmoothedRtt - mMinRtt > Math.max(QUEUE_DELAY_NANOS, mMinRtt)) {
+            decrease(nowNanos);
+        } else if (mLastIncrease != 0) {
+            float seconds = (nowNanos - mLastIncrease) / 1e9f;
+            mRate = clampRate(mRate + INCREASE_PER_SECOND * seconds);
+            mLastIncrease = nowNanos;
+        } else {
+            mLastIncrease = nowNanos;
+        }
+    }
+
+    /**
+     * {@code packets} were never acknowledged.
+     */
+    public void onLoss(int packets, long nowNanos) {
+        if (packets <= 0) return;
+        for (int i = 0; i < packets; i++) mLossRate += (1 - mLossRate) / 16;
+        decrease(nowNanos);
+    }
+
+    private void decrease(long nowNanos) {
+        long holdoff = Math.max(DECREASE_HOLDOFF_NANOS, 2 * mSmoothedRtt);
+        if (mLastDecrease != 0 && nowNanos - mLastDecrease < holdoff) return;
+        mRate = clampRate(mRate / 2);
+        mLastDecrease = nowNanos;
+        // grow again from here, not by the time spent congested
+        mLastIncrease = nowNanos;
+    }
+
+    private void updateRtt(long rtt, long now) {
+        if (!mHasRtt) {
+            mHasRtt = true;
+            mSmoothedRtt = rtt;
+            mRttVariation = rtt / 2;
+            mMinRtt = rtt;
+            mWindowMinRtt = rtt;
+            mWindowStart = now;
+            return;
+        }
+        // RFC 6298 gains of 1/8 and 1/4
+        long error = rtt - mSmoothedRtt;
+        mSmoothedRtt += error / 8;
+        mRttVariation += (Math.abs(error) - mRttVariation) / 4;
+        if (rtt < mMinRtt) mMinRtt = rtt;
+        if (rtt < mWindowMinRtt) mWindowMinRtt = rtt;
+        if (now - mWindowStart > MIN_RTT_WINDOW_NANOS) {
+            mMinRtt = mWindowMinRtt;
+            mWindowMinRtt = rtt;
+            mWindowStart = now;
+        }
+    }
+
+    private static float clampRate(float rate) {
+        return rate < MIN_RATE ? MIN_RATE : (rate > MAX_RATE ? MAX_RATE : rate);
+    }
+
+    /**
+     * Time to collect samples before sending them as one packet.
+     */
+    public long getIntervalNanos() {
+        return (long) (1e9f / mRate);
+    }
+
+    /**
+     * Samples a packet may fill up to before it is sent early: about as many as arrive in
+     * one interval, so batches fill rather than outrun the rate.
+     */
+    public int getBatchSamples() {
+        long samples = getIntervalNanos() / SAMPLE_INTERVAL_NANOS + 1;
+        return (int) Math.min(samples, CommandProtocol.MAX_SAMPLES);
+    }
+
+    public float getPacketsPerSecond() {
+        return mRate;
+    }
+
+    /**
+     * Smoothed round trip, 0 until the first acknowledgement.
+     */
+    public long getSmoothedRttNanos() {
+        return mSmoothedRtt;
+    }
+
+    /**
+     * Mean deviation of the round trip, a measure of jitter.
+     */
+    public long getRttVariationNanos() {
+        return mRttVariation;
+    }
+
+    public long getMinRttNanos() {
+        return mMinRtt;
+    }
+
+    /**
+     * Fraction of recent packets that were lost, between 0 and 1.
+     */
+    public float getLossRate() {
+        return mLossRate;
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.horecka.petdot.core;
+
+/**
+ * Receiver side of latest-wins sequencing: accepts a packet only if it is newer than the
+ * last one accepted, so a datagram that was overtaken or duplicated on the way is never
+ * applied after a fresher one.
+ * <p/>
+ * <p>Sequence numbers are compared with serial number arithmetic and may wrap. A sequence
+ * more than {@link #REORDER_WINDOW} behind the last accepted one cannot be a late packet
+ * and is taken as a restarted sender instead.</p>
+ */
+public class SequenceWindow {
+    public static final int REORDER_WINDOW = 1024;
+
+    private boolean mStarted;
+    private int mLast;
+
+    /**
+     * @return true if {@code sequence} is newer than every sequence accepted before and
+     * should be applied
+     */
+    public boolean accept(int sequence) {
+        if (mStarted) {
+            int delta = sequence - mLast;
+            if (delta <= 0 && delta > -REORDER_WINDOW) return false;
+        }
+        mStarted = true;
+        mLast = sequence;
+        return true;
+    }
+
+    /**
+     * The last accepted sequence, only meaningful once one was accepted.
+     */
+    public int getLast() {
+        return mLast;
+    }
+
+    public boolean hasStarted() {
+        return mStarted;
+    }
+
+    public void reset() {
+        mStarted = false;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.horecka.petdot.core;
+
+/**
+ * Precomputed mapping from touch surface pixels to servo angles.
+ * <p/>
+ * <p>Surface size, move limits, axis swap and inversion are folded into one 2x3 affine
+ * matrix when the transform is built:</p>
+ * <pre>
+ *   pan  = a * x + b * y + c
+ *   tilt = d * x + e * y + f
+ * </pre>
+ * <p>so mapping a sample is two multiply-adds and a clamp per axis, without parsing or
+ * allocation. Swapping means the screen's vertical axis drives pan; inversion is applied
+ * to the servo axes, after the swap. Instances are immutable and safe to share between
+ * threads.</p>
+ */
+public final class ServoTransform {
+    private final float mA, mB, mC;
+    private final float mD, mE, mF;
+    private final int mPanMin, mPanMax;
+    private final int mTiltMin, mTiltMax;
+
+    public ServoTransform(int width, int height, MoveLimits limits, AxisOrientation axes) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("surface size " + width + "x" + height);
+        }
+        float panScale = (float) (limits.xMax - limits.xMin) * (axes.invertX ? -1 : 1);
+        float tiltScale = (float) (limits.yMax - limits.yMin) * (axes.invertY ? -1 : 1);
+        if (axes.swap) {
+            mA = 0;
+            mB = panScale / height;
+            mD = tiltScale / width;
+            mE = 0;
+        } else {
+            mA = panScale / width;
+            mB = 0;
+            mD = 0;
+            mE = tiltScale / height;
+        }
+        // + 0.5 so the truncating cast in map*() rounds to nearest
+        mC = (axes.invertX ? limits.xMax : limits.xMin) + 0.5f;
+        mF = (axes.invertY ? limits.yMax : limits.yMin) + 0.5f;
+        mPanMin = limits.xMin;
+        mPanMax = limits.xMax;
+        mTiltMin = limits.yMin;
+        mTiltMax = limits.yMax;
+    }
+
+    public int mapPan(float x, float y) {
+        int pan = (int) (mA * x + mB * y + mC);
+        return pan < mPanMin ? mPanMin : (pan > mPanMax ? mPanMax : pan);
+    }
+
+    public int mapTilt(float x, float y) {
+        int tilt = (int) (mD * x + mE * y + mF);
+        return tilt < mTiltMin ? mTiltMin : (tilt > mTiltMax ? mTiltMax : tilt);
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.horecka.petdot.core;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Typed settings kept in memory and written behind to a {@link Backend}.
+ * <p/>
+ * <p>Reads and writes only touch an immutable in-memory snapshot, so saving a setting from
+ * a click handler costs a map copy, never a file write. Changes are written on a background
+ * thread once no other change followed for {@link #COALESCE_MILLIS}, a burst of them as a
+ * single write. {@link #flush()} makes everything written so far durable before it returns,
+ * for when the process may be killed next, e.g. when the activity pauses.</p>
+ * <p/>
+ * <p>Thread safe; the background thread is started on the first change.</p>
+ */
+public class SettingsStore {
+    /** Changes this close together reach the backend in one write. */
+    public static final long COALESCE_MILLIS = 100;
+
+    /**
+     * Where the settings live between runs.
+     */
+    public interface Backend {
+        /**
+         * Reads every stored setting. Called once, by the constructor.
+         */
+        public Map<String, ?> load();
+
+        /**
+         * Writes {@code settings} durably. Called from the background thread, or from
+         * whichever thread calls {@link #flush()}, never concurrently.
+         *
+         * @return false if they could not be written
+         */
+        public boolean store(Map<String, Object> settings);
+    }
+
+    private final Backend mBackend;
+    private final Object mWriteLock = new Object();
+    private final WriteBehind mWriteBehind = new WriteBehind("PetDot-settings",
+            COALESCE_MILLIS, new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            });
+    private volatile Map<String, Object> mSettings;
+    // guarded by this
+    private int mVersion;
+    // guarded by mWriteLock
+    private int mWrittenVersion;
+
+    public SettingsStore(Backend backend) {
+        mBackend = backend;
+        mSettings = Collections.unmodifiableMap(new HashMap<String, Object>(backend.load()));
+    }
+
+    public String getString(String key, String defaultValue) {
+        Object value = mSettings.get(key);
+        return value instanceof String ? (String) value : defaultValue;
+    }
+
+    public int getInt(String key, int defaultValue) {
+        Object value = mSettings.get(key);
+        return value instanceof Integer ? (Integer) value : defaultValue;
+    }
+
+    public void putString(String key, String value) {
+        put(key, value);
+    }
+
+    public void putInt(String key, int value) {
+        put(key, value);
+    }
+
+    private synchronized void put(String key, Object value) {
+        if (value.equals(mSettings.get(key))) return;
+        Map<String, Object> settings = new HashMap<String, Object>(mSettings);
+        settings.put(key, value);
+        mSettings = Collections.unmodifiableMap(settings);
+        mVersion++;
+        mWriteBehind.changed();
+    }
+
+    /**
+     * Writes any change the background thread has not written yet and returns once it is
+     * durable. Returns at once when there is none, which is the usual case
+     * {@link #COALESCE_MILLIS} after the last change.
+     *
+     * @return false if the backend failed to write; the change is retried with the next one
+     */
+    public boolean flush() {
+        synchronized (mWriteLock) {
+            Map<String, Object> settings;
+            int version;
+            synchronized (this) {
+                settings = mSettings;
+                version = mVersion;
+            }
+            if (version == mWrittenVersion) return true;
+            if (!mBackend.store(settings)) return false;
+            mWrittenVersion = version;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.horecka.petdot.core;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free counter for hot paths, in the spirit of {@code java.util.concurrent.atomic.LongAdder}
+ * (which Android only has from API 24).
+ * <p/>
+ * <p>The count is split over a few cells, each on its own cache line, and every thread adds
+ * to the cell picked by its thread id. Threads that increment the same counter therefore
+ * rarely contend on, or bounce, the same line; an increment is one uncontended atomic add.
+ * Reading sums all cells and is only approximate while others are adding.</p>
+ */
+public class StripedCounter {
+    private static final int STRIPE_BITS = 3;
+    private static final int STRIPES = 1 << STRIPE_BITS;
+    /** Longs per cell, so two cells never share a 64 byte cache line. */
+    private static final int PADDING = 8;
+
+    private final AtomicLongArray mCells = new AtomicLongArray(STRIPES * PADDING);
+
+    public void increment() {
+        add(1);
+    }
+
+    public void add(long delta) {
+        mCells.addAndGet(cellOf(Thread.currentThread().getId()), delta);
+    }
+
+    private static int cellOf(long threadId) {
+        // Fibonacci hashing, so consecutive thread ids spread over all cells
+        int hash = (int) threadId * 0x9E3779B9;
+        return (hash >>> (32 - STRIPE_BITS)) * PADDING;
+    }
+
+    public long get() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) sum += mCells.get(i * PADDING);
+        return sum;
+    }
+
+    public void reset() {
+        for (int i = 0; i < STRIPES; i++) mCells.set(i * PADDING, 0);
+    }
+}
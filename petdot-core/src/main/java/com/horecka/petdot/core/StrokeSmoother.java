@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.horecka.petdot.core;
+
+/**
+ * Midpoint quadratic smoothing of a touch stroke.
+ * <p/>
+ * <p>Every accepted point completes one quadratic segment: it starts at the previous
+ * midpoint, curves through the previous point and ends at the midpoint between the previous
+ * and the new point. What is left from the last midpoint to the newest point is the live
+ * tail, which is only final once the stroke ends.</p>
+ */
+public class StrokeSmoother {
+    private final float mTolerance;
+
+    private float mX, mY;
+    private float mStartX, mStartY;
+    private float mControlX, mControlY;
+    private float mEndX, mEndY;
+
+    /**
+     * @param tolerance points closer than this on both axes to the previous one are ignored
+     */
+    public StrokeSmoother(float tolerance) {
+        mTolerance = tolerance;
+    }
+
+    public void start(float x, float y) {
+        mX = x;
+        mY = y;
+        mEndX = x;
+        mEndY = y;
+    }
+
+    /**
+     * @return true if the point was accepted and completed a new segment
+     */
+    public boolean move(float x, float y) {
+        if (Math.abs(x - mX) < mTolerance && Math.abs(y - mY) < mTolerance) return false;
+        mStartX = mEndX;
+        mStartY = mEndY;
+        mControlX = mX;
+        mControlY = mY;
+        mEndX = (x + mX) / 2;
+        mEndY = (y + mY) / 2;
+        mX = x;
+        mY = y;
+        return true;
+    }
+
+    public float getStartX() {
+        return mStartX;
+    }
+
+    public float getStartY() {
+        return mStartY;
+    }
+
+    public float getControlX() {
+        return mControlX;
+    }
+
+    public float getControlY() {
+        return mControlY;
+    }
+
+    /**
+     * End of the last completed segment, which is also where the live tail starts.
+     */
+    public float getEndX() {
+        return mEndX;
+    }
+
+    public float getEndY() {
+        return mEndY;
+    }
+
+    /**
+     * The newest accepted point, where the live tail ends.
+     */
+    public float getLastX() {
+        return mX;
+    }
+
+    public float getLastY() {
+        return mY;
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.horecka.petdot.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free single-producer/single-consumer ring of touch samples.
+ * <p/>
+ * <p>Samples are kept in parallel primitive arrays so publishing one from the UI thread is
+ * a handful of array stores and an ordered counter write, with no allocation and no lock.
+ * Each sample is stamped with its enqueue time for latency tracing. Exactly
+ * one thread may call {@link #offer} and exactly one (possibly different) thread may call
+ * {@link #drainTo}. When the ring is full new samples are rejected rather than blocking the
+ * producer.</p>
+ */
+public class TouchSampleRing {
+    public static final int ACTION_DOWN = 0;
+    public static final int ACTION_MOVE = 1;
+    public static final int ACTION_UP = 2;
+
+    private final int[] mActions;
+    private final float[] mXs;
+    private final float[] mYs;
+    private final long[] mTimes;
+    private final long[] mEnqueueTimes;
+    private final int mMask;
+
+    /** Next slot the producer writes, only advanced by the producer. */
+    private final AtomicLong mTail = new AtomicLong();
+    /** Next slot the consumer reads, only advanced by the consumer. */
+    private final AtomicLong mHead = new AtomicLong();
+    /** Producer's cached view of mHead, avoids reading the shared counter on every offer. */
+    private long mHeadCache;
+
+    /**
+     * @param capacity rounded up to a power of two
+     */
+    public TouchSampleRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        mActions = new int[size];
+        mXs = new float[size];
+        mYs = new float[size];
+        mTimes = new long[size];
+        mEnqueueTimes = new long[size];
+        mMask = size - 1;
+    }
+
+    public int capacity() {
+        return mMask + 1;
+    }
+
+    /**
+     * Publishes one {@link #ACTION_MOVE} sample. Producer thread only.
+     *
+     * @param timeNanos event time on the monotonic clock, in nanoseconds
+     * @return false if the ring is full and the sample was dropped
+     */
+    public boolean offer(float x, float y, long timeNanos) {
+        return offer(ACTION_MOVE, x, y, timeNanos);
+    }
+
+    /**
+     * Publishes one sample. Producer thread only.
+     *
+     * @param action one of the ACTION_ constants
+     * @param timeNanos event time on the monotonic clock, in nanoseconds
+     * @return false if the ring is full and the sample was dropped
+     */
+    public boolean offer(int action, float x, float y, long timeNanos) {
+        long tail = mTail.get();
+        if (tail - mHeadCache > mMask) {
+            mHeadCache = mHead.get();
+            if (tail - mHeadCache > mMask) return false;
+        }
+        int index = (int) tail & mMask;
+        mActions[index] = action;
+        mXs[index] = x;
+        mYs[index] = y;
+        mTimes[index] = timeNanos;
+        mEnqueueTimes[index] = System.nanoTime();
+        // volatile write so a consumer that is about to park is guaranteed to see it
+        mTail.set(tail + 1);
+        return true;
+    }
+
+    /**
+     * Moves up to {@code max} of the oldest samples into the given arrays. Consumer thread
+     * only.
+     *
+     * @return the number of samples copied
+     */
+    public int drainTo(float[] xs, float[] ys, long[] times, int max) {
+        return drainTo(null, xs, ys, times, max);
+    }
+
+    /**
+     * Like {@link #drainTo(float[], float[], long[], int)}, also copying each sample's action
+     * unless {@code actions} is null.
+     */
+    public int drainTo(int[] actions, float[] xs, float[] ys, long[] times, int max) {
+        return drainTo(actions, xs, ys, times, null, max);
+    }
+
+    /**
+     * Like {@link #drainTo(int[], float[], float[], long[], int)}, also copying each sample's
+     * enqueue time unless {@code enqueueTimes} is null.
+     */
+    public int drainTo(int[] actions, float[] xs, float[] ys, long[] times,
+                       long[] enqueueTimes, int max) {
+        long head = mHead.get();
+        int count = (int) Math.min(mTail.get() - head, max);
+        for (int i = 0; i < count; i++) {
+            int index = (int) (head + i) & mMask;
+            if (actions != null) actions[i] = mActions[index];
+            xs[i] = mXs[index];
+            ys[i] = mYs[index];
+            times[i] = mTimes[index];
+            if (enqueueTimes != null) enqueueTimes[i] = mEnqueueTimes[index];
+        }
+        mHead.lazySet(head + count);
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return mTail.get() == mHead.get();
+    }
+}
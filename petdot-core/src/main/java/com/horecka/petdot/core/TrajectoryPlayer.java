@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.horecka.petdot.core;
+
+/**
+ * Plays back {@link CommandProtocol#TYPE_TRAJECTORY} segments on the unit's servo tick.
+ * <p/>
+ * <p>A segment starts where the head currently is and reaches each of its samples at the
+ * sample's time after arrival, linearly interpolating in between, so the servos follow the
+ * drawn path at its original pace however the packets were spaced on the air. A segment
+ * that arrives while the previous one is still playing takes over from the current
+ * position. Move packets are applied at once.</p>
+ * <p/>
+ * <p>Keeps primitive arrays only; playing and ticking do not allocate.</p>
+ */
+public class TrajectoryPlayer {
+    // key 0 is the position the segment started from, keys 1..mKeyCount-1 its samples
+    private final float[] mPans = new float[CommandProtocol.MAX_SAMPLES + 1];
+    private final float[] mTilts = new float[CommandProtocol.MAX_SAMPLES + 1];
+    private final long[] mTimes = new long[CommandProtocol.MAX_SAMPLES + 1];
+    private int mKeyCount;
+    private int mNextKey;
+    private long mStartNanos;
+    private float mPan;
+    private float mTilt;
+
+    /**
+     * Starts playing the packet just decoded by {@code decoder}.
+     *
+     * @param nowNanos arrival time on the monotonic clock
+     */
+    public void play(CommandDecoder decoder, long nowNanos) {
+        play(decoder, 0, nowNanos);
+    }
+
+    /**
+     * Starts playing the packet just decoded by {@code decoder} from sample {@code first},
+     * e.g. past repeats of samples already played. Sample {@code first} is reached as long
+     * after arrival as it followed the sample before it.
+     *
+     * @param nowNanos arrival time on the monotonic clock
+     */
+    public void play(CommandDecoder decoder, int first, long nowNanos) {
+        int count = decoder.getSampleCount();
+        long base = first > 0 ? decoder.getTime(first - 1) : 0;
+        mPans[0] = mPan;
+        mTilts[0] = mTilt;
+        mTimes[0] = 0;
+        for (int i = first; i < count; i++) {
+            int key = i - first + 1;
+            mPans[key] = decoder.getPan(i);
+            mTilts[key] = decoder.getTilt(i);
+            mTimes[key] = (decoder.getTime(i) - base) * 1000000L;
+        }
+        mKeyCount = count - first + 1;
+        mNextKey = 1;
+        mStartNanos = nowNanos;
+        tick(nowNanos);
+    }
+
+    /**
+     * Moves the head to where the segment is at {@code nowNanos}.
+     *
+     * @return whether the segment is still playing
+     */
+    public boolean tick(long nowNanos) {
+        if (mNextKey >= mKeyCount) return false;
+        long elapsed = nowNanos - mStartNanos;
+        while (mNextKey < mKeyCount && mTimes[mNextKey] <= elapsed) mNextKey++;
+        if (mNextKey >= mKeyCount) {
+            mPan = mPans[mKeyCount - 1];
+            mTilt = mTilts[mKeyCount - 1];
+            return false;
+        }
+        int from = mNextKey - 1;
+        float f = (elapsed - mTimes[from]) / (float) (mTimes[mNextKey] - mTimes[from]);
+        mPan = mPans[from] + (mPans[mNextKey] - mPans[from]) * f;
+        mTilt = mTilts[from] + (mTilts[mNextKey] - mTilts[from]) * f;
+        return true;
+    }
+
+    public boolean isPlaying() {
+        return mNextKey < mKeyCount;
+    }
+
+    /**
+     * Current pan in whole servo degrees.
+     */
+    public int getPan() {
+        return Math.round(mPan);
+    }
+
+    /**
+     * Current tilt in whole servo degrees.
+     */
+    public int getTilt() {
+        return Math.round(mTilt);
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.horecka.petdot.core;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+/**
+ * Non-blocking datagram link to a single PetDot unit.
+ * <p/>
+ * <p>The channel is connected to the unit's address so that every write goes to the same
+ * peer without an address lookup, and it is never allowed to block: if the kernel send
+ * buffer is full the datagram is dropped. That is what we want for position updates,
+ * the next one will carry a newer position anyway.</p>
+ * <p/>
+ * <p>A link is not thread safe and is meant to be owned by the sender thread.</p>
+ */
+public class UdpCommandLink {
+    private final String mHost;
+    private final int mPort;
+    private DatagramChannel mChannel;
+
+    public UdpCommandLink(String host, int port) {
+        mHost = host;
+        mPort = port;
+    }
+
+    /**
+     * Opens and connects the channel, looking the host up again. Must not be called from
+     * the UI thread.
+     *
+     * @throws UnknownHostException if the host cannot be resolved, e.g. while offline
+     */
+    public void open() throws IOException {
+        InetSocketAddress address = new InetSocketAddress(mHost, mPort);
+        if (address.isUnresolved()) throw new UnknownHostException(mHost);
+        DatagramChannel channel = DatagramChannel.open();
+        try {
+            channel.configureBlocking(false);
+            channel.connect(address);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        mChannel = channel;
+    }
+
+    public boolean isOpen() {
+        return mChannel != null && mChannel.isOpen();
+    }
+
+    /**
+     * Writes the remaining bytes of {@code datagram} as a single datagram. A direct buffer
+     * is written without being copied first, see {@link BufferPool}.
+     *
+     * @return false if the datagram was dropped, either because the send buffer is full or
+     * because the unit is not listening (yet).
+     */
+    public boolean send(ByteBuffer datagram) throws IOException {
+        try {
+            return mChannel.write(datagram) > 0;
+        } catch (PortUnreachableException e) {
+            // An ICMP error from a previous datagram; the unit may simply not be up yet.
+            return false;
+        }
+    }
+
+    /**
+     * Reads one pending datagram into {@code datagram}, without blocking.
+     *
+     * @return false if nothing was waiting
+     */
+    public boolean receive(ByteBuffer datagram) throws IOException {
+        try {
+            return mChannel.read(datagram) > 0;
+        } catch (PortUnreachableException e) {
+            return false;
+        }
+    }
+
+    public void close() {
+        if (mChannel == null) return;
+        try {
+            mChannel.close();
+        } catch (IOException e) {
+            // nothing useful left to do with it
+        }
+        mChannel = null;
+    }
+
+    public String getHost() {
+        return mHost;
+    }
+
+    public int getPort() {
+        return mPort;
+    }
+}
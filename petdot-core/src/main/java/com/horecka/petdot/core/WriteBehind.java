@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.horecka.petdot.core;
+
+/**
+ * Runs a write on a background thread once changes have stopped for a while, so that a
+ * burst of changes made on the UI thread costs one write, and none of it on that thread.
+ * <p/>
+ * <p>The thread is a daemon started on the first change. The write itself must cope with
+ * being called concurrently from elsewhere, e.g. by an explicit flush.</p>
+ */
+public class WriteBehind {
+    private final String mName;
+    private final long mQuietMillis;
+    private final Runnable mWrite;
+    // guarded by this
+    private int mVersion;
+    private int mSeenVersion;
+    private Thread mThread;
+
+    /**
+     * @param name of the background thread
+     * @param quietMillis how long no change must have been made before writing
+     */
+    public WriteBehind(String name, long quietMillis, Runnable write) {
+        mName = name;
+        mQuietMillis = quietMillis;
+        mWrite = write;
+    }
+
+    /**
+     * Schedules a write; returns at once.
+     */
+    public synchronized void changed() {
+        mVersion++;
+        if (mThread == null) {
+            mThread = new Thread(mName) {
+                @Override
+                public void run() {
+                    loop();
+                }
+            };
+            mThread.setDaemon(true);
+            mThread.start();
+        }
+        notifyAll();
+    }
+
+    private void loop() {
+        try {
+            while (true) {
+                awaitChange();
+                // wait for the burst to end
+                do {
+                    Thread.sleep(mQuietMillis);
+                } while (!isSettled());
+                mWrite.run();
+            }
+        } catch (InterruptedException e) {
+            // never interrupted, the thread lives as long as the process
+        }
+    }
+
+    private synchronized void awaitChange() throws InterruptedException {
+        while (mSeenVersion == mVersion) wait();
+        mSeenVersion = mVersion;
+    }
+
+    /* Whether nothing changed since the last call, marking the current version seen */
+    private synchronized boolean isSettled() {
+        boolean settled = mSeenVersion == mVersion;
+        mSeenVersion = mVersion;
+        return settled;
+    }
+}
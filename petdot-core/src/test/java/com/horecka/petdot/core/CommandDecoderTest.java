@@ -0,0 +1,381 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.horecka.petdot.core;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Round trips through {@link CommandEncoder} and {@link CommandDecoder}, and the malformed
+ * datagrams the decoder has to turn away.
+ */
+public class CommandDecoderTest {
+    private final ByteBuffer mBuffer = ByteBuffer.allocate(CommandProtocol.MAX_PACKET_SIZE);
+    private final CommandDecoder mDecoder = new CommandDecoder();
+
+    @Test
+    public void singleMoveRoundTrips() {
+        CommandEncoder.encodeMove(mBuffer, 42, 90, 45);
+        assertTrue(decode());
+        assertEquals(CommandProtocol.TYPE_MOVE, mDecoder.getType());
+        assertEquals(42, mDecoder.getSequence());
+        assertEquals(1, mDecoder.getSampleCount());
+        assertEquals(90, mDecoder.getPan(0));
+        assertEquals(45, mDecoder.getTilt(0));
+        assertEquals(0, mDecoder.getTime(0));
+    }
+
+    @Test
+    public void moveRoundTripsExtremeDeltas() {
+        int[] pans = {0, 180, 0, 255, 0, 1, 0};
+        int[] tilts = {180, 0, 255, 0, 90, 90, 89};
+        CommandEncoder.encodeMove(mBuffer, 7, pans, tilts, 0, pans.length);
+        assertTrue(decode());
+        assertSamples(pans, tilts);
+    }
+
+    @Test
+    public void moveHonoursOffset() {
+        int[] pans = {1, 2, 3, 4};
+        int[] tilts = {5, 6, 7, 8};
+        CommandEncoder.encodeMove(mBuffer, 7, pans, tilts, 1, 2);
+        assertTrue(decode());
+        assertEquals(2, mDecoder.getSampleCount());
+        assertEquals(2, mDecoder.getPan(0));
+        assertEquals(7, mDecoder.getTilt(1));
+    }
+
+    @Test
+    public void encoderClampsAnglesToOneByte() {
+        CommandEncoder.encodeMove(mBuffer, 1, new int[] {-5, 300}, new int[] {256, -1}, 0, 2);
+        assertTrue(decode());
+        assertEquals(0, mDecoder.getPan(0));
+        assertEquals(CommandProtocol.MAX_ANGLE, mDecoder.getPan(1));
+        assertEquals(CommandProtocol.MAX_ANGLE, mDecoder.getTilt(0));
+        assertEquals(0, mDecoder.getTilt(1));
+    }
+
+    @Test
+    public void worstCaseMoveFitsItsBound() {
+        int[] pans = new int[CommandProtocol.MAX_SAMPLES];
+        int[] tilts = new int[CommandProtocol.MAX_SAMPLES];
+        for (int i = 0; i < pans.length; i++) {
+            pans[i] = i % 2 == 0 ? 0 : CommandProtocol.MAX_ANGLE;
+            tilts[i] = i % 2 == 0 ? CommandProtocol.MAX_ANGLE : 0;
+        }
+        CommandEncoder.encodeMove(mBuffer, 1, pans, tilts, 0, pans.length);
+        assertTrue(mBuffer.position() <= CommandProtocol.MAX_MOVE_SIZE);
+        assertTrue(decode());
+        assertSamples(pans, tilts);
+    }
+
+    @Test
+    public void trajectoryRoundTrips() {
+        int[] pans = {10, 190, 10, 0};
+        int[] tilts = {180, 0, 180, 255};
+        long[] times = {1000000000L, 1008000000L, 1016500000L, 1033000000L};
+        CommandEncoder.encodeTrajectory(mBuffer, 99, 12, 1, pans, tilts, times, 0, 4);
+        assertTrue(decode());
+        assertEquals(CommandProtocol.TYPE_TRAJECTORY, mDecoder.getType());
+        assertEquals(99, mDecoder.getSequence());
+        assertEquals(1, mDecoder.getRepeatedCount());
+        assertSamples(pans, tilts);
+        // times relative to arrival: the lead-in, then the rounded offsets from the first
+        assertEquals(12, mDecoder.getTime(0));
+        assertEquals(12 + 8, mDecoder.getTime(1));
+        assertEquals(12 + 16, mDecoder.getTime(2));
+        assertEquals(12 + 33, mDecoder.getTime(3));
+    }
+
+    @Test
+    public void trajectoryClampsIntervals() {
+        int[] pans = {0, 1, 2};
+        int[] tilts = {0, 1, 2};
+        long[] times = {0, 60000000000L, 50000000000L};
+        CommandEncoder.encodeTrajectory(mBuffer, 1, -3, pans, tilts, times, 0, 3);
+        assertTrue(decode());
+        assertEquals(0, mDecoder.getTime(0));
+        assertEquals(CommandProtocol.MAX_INTERVAL_MILLIS, mDecoder.getTime(1));
+        // time never runs backwards
+        assertEquals(CommandProtocol.MAX_INTERVAL_MILLIS, mDecoder.getTime(2));
+    }
+
+    @Test
+    public void worstCaseTrajectoryFitsItsBound() {
+        int[] pans = new int[CommandProtocol.MAX_SAMPLES];
+        int[] tilts = new int[CommandProtocol.MAX_SAMPLES];
+        long[] times = new long[CommandProtocol.MAX_SAMPLES];
+        for (int i = 0; i < pans.length; i++) {
+            pans[i] = i % 2 == 0 ? 0 : CommandProtocol.MAX_ANGLE;
+            tilts[i] = i % 2 == 0 ? CommandProtocol.MAX_ANGLE : 0;
+            times[i] = i * (long) CommandProtocol.MAX_INTERVAL_MILLIS * 1000000L;
+        }
+        CommandEncoder.encodeTrajectory(mBuffer, 1, CommandProtocol.MAX_INTERVAL_MILLIS,
+                pans.length, pans, tilts, times, 0, pans.length);
+        assertTrue(mBuffer.position() <= CommandProtocol.MAX_TRAJECTORY_SIZE);
+        assertTrue(decode());
+        assertSamples(pans, tilts);
+    }
+
+    @Test
+    public void controlPacketsRoundTrip() {
+        CommandEncoder.encodeAck(mBuffer, 5);
+        assertTrue(decode());
+        assertEquals(CommandProtocol.TYPE_ACK, mDecoder.getType());
+        assertEquals(5, mDecoder.getSequence());
+
+        CommandEncoder.encodePing(mBuffer, 6, Long.MIN_VALUE);
+        assertTrue(decode());
+        assertEquals(CommandProtocol.TYPE_PING, mDecoder.getType());
+        assertEquals(Long.MIN_VALUE, mDecoder.getTimestamp());
+
+        CommandEncoder.encodePong(mBuffer, 6, Long.MAX_VALUE);
+        assertTrue(decode());
+        assertEquals(CommandProtocol.TYPE_PONG, mDecoder.getType());
+        assertEquals(6, mDecoder.getSequence());
+        assertEquals(Long.MAX_VALUE, mDecoder.getTimestamp());
+
+        CommandEncoder.encodeHello(mBuffer, 1, 0x0123456789ABCDEFL);
+        assertTrue(decode());
+        assertEquals(CommandProtocol.TYPE_HELLO, mDecoder.getType());
+        assertEquals(0x0123456789ABCDEFL, mDecoder.getSession());
+
+        CommandEncoder.encodeWelcome(mBuffer, -2, -1L, true);
+        assertTrue(decode());
+        assertEquals(CommandProtocol.TYPE_WELCOME, mDecoder.getType());
+        assertEquals(-2, mDecoder.getSequence());
+        assertEquals(-1L, mDecoder.getSession());
+        assertTrue(mDecoder.isResumed());
+
+        CommandEncoder.encodeWelcome(mBuffer, 0, 3L, false);
+        assertTrue(decode());
+        assertFalse(mDecoder.isResumed());
+
+        CommandEncoder.encodeLimits(mBuffer, 8, new MoveLimits(0, 180, 30, 150));
+        assertTrue(decode());
+        assertEquals(CommandProtocol.TYPE_LIMITS, mDecoder.getType());
+        assertEquals(0, mDecoder.getPanMin());
+        assertEquals(180, mDecoder.getPanMax());
+        assertEquals(30, mDecoder.getTiltMin());
+        assertEquals(150, mDecoder.getTiltMax());
+
+        CommandEncoder.encodeLimitsAck(mBuffer, 8);
+        assertTrue(decode());
+        assertEquals(CommandProtocol.TYPE_LIMITS_ACK, mDecoder.getType());
+        assertEquals(8, mDecoder.getSequence());
+    }
+
+    @Test
+    public void sequenceRoundTripsAcrossWrap() {
+        int[] sequences = {Integer.MAX_VALUE, Integer.MIN_VALUE, -1, 0};
+        for (int sequence : sequences) {
+            CommandEncoder.encodeMove(mBuffer, sequence, 1, 2);
+            assertTrue(decode());
+            assertEquals(sequence, mDecoder.getSequence());
+        }
+    }
+
+    @Test
+    public void rejectsEveryTruncation() {
+        int[] pans = {0, 180, 255};
+        int[] tilts = {255, 0, 90};
+        long[] times = {0, 20000000L, 40000000L};
+        CommandEncoder.encodeMove(mBuffer, 1, pans, tilts, 0, 3);
+        assertTruncationsRejected();
+        CommandEncoder.encodeTrajectory(mBuffer, 1, 10, 1, pans, tilts, times, 0, 3);
+        assertTruncationsRejected();
+        CommandEncoder.encodeAck(mBuffer, 1);
+        assertTruncationsRejected();
+        CommandEncoder.encodePing(mBuffer, 1, 123);
+        assertTruncationsRejected();
+        CommandEncoder.encodePong(mBuffer, 1, 123);
+        assertTruncationsRejected();
+        CommandEncoder.encodeHello(mBuffer, 1, 123);
+        assertTruncationsRejected();
+        CommandEncoder.encodeWelcome(mBuffer, 1, 123, true);
+        assertTruncationsRejected();
+        CommandEncoder.encodeLimits(mBuffer, 1, MoveLimits.DEFAULT);
+        assertTruncationsRejected();
+        CommandEncoder.encodeLimitsAck(mBuffer, 1);
+        assertTruncationsRejected();
+    }
+
+    @Test
+    public void rejectsBadMagic() {
+        CommandEncoder.encodeMove(mBuffer, 1, 2, 3);
+        mBuffer.put(0, (byte) 'Q');
+        assertFalse(decode());
+    }
+
+    @Test
+    public void rejectsOtherVersions() {
+        for (int version : new int[] {0, CommandProtocol.VERSION + 1, 15}) {
+            CommandEncoder.encodeMove(mBuffer, 1, 2, 3);
+            mBuffer.put(1, (byte) ((version << 4) | CommandProtocol.TYPE_MOVE));
+            assertFalse("version " + version, decode());
+        }
+    }
+
+    @Test
+    public void rejectsUnknownTypes() {
+        for (int type : new int[] {0, CommandProtocol.TYPE_LIMITS_ACK + 1, 15}) {
+            CommandEncoder.encodeMove(mBuffer, 1, 2, 3);
+            mBuffer.put(1, (byte) ((CommandProtocol.VERSION << 4) | type));
+            assertFalse("type " + type, decode());
+        }
+    }
+
+    @Test
+    public void rejectsBadSampleCounts() {
+        for (int count : new int[] {0, CommandProtocol.MAX_SAMPLES + 1}) {
+            CommandProtocol.putHeader(mBuffer, CommandProtocol.TYPE_MOVE, 1);
+            CommandProtocol.putVarint(mBuffer, count);
+            for (int i = 0; i < 2 * CommandProtocol.MAX_SAMPLES + 2; i++) mBuffer.put((byte) 0);
+            assertFalse("count " + count, decode());
+        }
+    }
+
+    @Test
+    public void rejectsOverlongVarint() {
+        CommandProtocol.putHeader(mBuffer, CommandProtocol.TYPE_MOVE, 1);
+        for (int i = 0; i < 5; i++) mBuffer.put((byte) 0x81);
+        mBuffer.put((byte) 0);
+        mBuffer.put((byte) 0);
+        assertFalse(decode());
+    }
+
+    @Test
+    public void rejectsDeltasLeavingTheAngleRange() {
+        CommandProtocol.putHeader(mBuffer, CommandProtocol.TYPE_MOVE, 1);
+        CommandProtocol.putVarint(mBuffer, 2);
+        mBuffer.put((byte) 250);
+        mBuffer.put((byte) 0);
+        CommandProtocol.putVarint(mBuffer, CommandProtocol.zigzag(10));
+        CommandProtocol.putVarint(mBuffer, CommandProtocol.zigzag(0));
+        assertFalse(decode());
+
+        CommandProtocol.putHeader(mBuffer, CommandProtocol.TYPE_MOVE, 1);
+        CommandProtocol.putVarint(mBuffer, 2);
+        mBuffer.put((byte) 0);
+        mBuffer.put((byte) 5);
+        CommandProtocol.putVarint(mBuffer, CommandProtocol.zigzag(0));
+        CommandProtocol.putVarint(mBuffer, CommandProtocol.zigzag(-6));
+        assertFalse(decode());
+    }
+
+    @Test
+    public void rejectsMoreRepeatsThanSamples() {
+        CommandProtocol.putHeader(mBuffer, CommandProtocol.TYPE_TRAJECTORY, 1);
+        CommandProtocol.putVarint(mBuffer, 1);
+        CommandProtocol.putVarint(mBuffer, 2);
+        CommandProtocol.putVarint(mBuffer, 0);
+        mBuffer.put((byte) 0);
+        mBuffer.put((byte) 0);
+        assertFalse(decode());
+    }
+
+    @Test
+    public void rejectsIntervalsOutOfRange() {
+        CommandProtocol.putHeader(mBuffer, CommandProtocol.TYPE_TRAJECTORY, 1);
+        CommandProtocol.putVarint(mBuffer, 2);
+        CommandProtocol.putVarint(mBuffer, 0);
+        CommandProtocol.putVarint(mBuffer, 0);
+        mBuffer.put((byte) 0);
+        mBuffer.put((byte) 0);
+        CommandProtocol.putVarint(mBuffer, CommandProtocol.MAX_INTERVAL_MILLIS + 1);
+        CommandProtocol.putVarint(mBuffer, 0);
+        CommandProtocol.putVarint(mBuffer, 0);
+        assertFalse(decode());
+    }
+
+    @Test
+    public void rejectsInvertedLimits() {
+        CommandProtocol.putHeader(mBuffer, CommandProtocol.TYPE_LIMITS, 1);
+        mBuffer.put((byte) 100);
+        mBuffer.put((byte) 99);
+        mBuffer.put((byte) 0);
+        mBuffer.put((byte) 180);
+        assertFalse(decode());
+    }
+
+    @Test
+    public void encoderRefusesBadCounts() {
+        int[] angles = new int[CommandProtocol.MAX_SAMPLES + 1];
+        long[] times = new long[angles.length];
+        try {
+            CommandEncoder.encodeMove(mBuffer, 1, angles, angles, 0, 0);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            CommandEncoder.encodeTrajectory(mBuffer, 1, 0, angles, angles, times, 0,
+                    angles.length);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            CommandEncoder.encodeTrajectory(mBuffer, 1, 0, 3, angles, angles, times, 0, 2);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void zigzagRoundTrips() {
+        int[] values = {0, 1, -1, 180, -180, 255, -255, Integer.MAX_VALUE, Integer.MIN_VALUE};
+        for (int value : values) {
+            assertEquals(value, CommandProtocol.unzigzag(CommandProtocol.zigzag(value)));
+            mBuffer.clear();
+            CommandProtocol.putVarint(mBuffer, CommandProtocol.zigzag(value));
+            mBuffer.flip();
+            assertEquals(value, CommandProtocol.unzigzag(CommandProtocol.getVarint(mBuffer)));
+        }
+    }
+
+    /* Decodes what was encoded into mBuffer and readies it for the next packet */
+    private boolean decode() {
+        mBuffer.flip();
+        boolean decoded = mDecoder.decode(mBuffer);
+        mBuffer.clear();
+        return decoded;
+    }
+
+    private void assertTruncationsRejected() {
+        byte[] packet = Arrays.copyOf(mBuffer.array(), mBuffer.position());
+        mBuffer.clear();
+        assertTrue(mDecoder.decode(ByteBuffer.wrap(packet)));
+        for (int length = 0; length < packet.length; length++) {
+            assertFalse("decoded " + length + " of " + packet.length + " bytes",
+                    mDecoder.decode(ByteBuffer.wrap(packet, 0, length)));
+        }
+    }
+
+    private void assertSamples(int[] pans, int[] tilts) {
+        assertEquals(pans.length, mDecoder.getSampleCount());
+        for (int i = 0; i < pans.length; i++) {
+            assertEquals("pan " + i, pans[i], mDecoder.getPan(i));
+            assertEquals("tilt " + i, tilts[i], mDecoder.getTilt(i));
+        }
+    }
+}
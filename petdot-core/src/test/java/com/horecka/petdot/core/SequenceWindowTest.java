@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.horecka.petdot.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The latest-wins rule of {@link SequenceWindow}, across the wrap and a session reset.
+ */
+public class SequenceWindowTest {
+    private final SequenceWindow mWindow = new SequenceWindow();
+
+    @Test
+    public void acceptsAnyFirstSequence() {
+        assertFalse(mWindow.hasStarted());
+        assertTrue(mWindow.accept(-123456));
+        assertTrue(mWindow.hasStarted());
+        assertEquals(-123456, mWindow.getLast());
+    }
+
+    @Test
+    public void acceptsInOrderAndGaps() {
+        for (int sequence = 0; sequence < 10; sequence++) {
+            assertTrue(mWindow.accept(sequence));
+        }
+        // lost packets in between do not hold the newer ones back
+        assertTrue(mWindow.accept(15));
+        assertTrue(mWindow.accept(15 + SequenceWindow.REORDER_WINDOW * 4));
+        assertEquals(15 + SequenceWindow.REORDER_WINDOW * 4, mWindow.getLast());
+    }
+
+    @Test
+    public void rejectsDuplicatesAndStaleSequences() {
+        mWindow.accept(100);
+        assertFalse(mWindow.accept(100));
+        assertFalse(mWindow.accept(99));
+        assertFalse(mWindow.accept(100 - SequenceWindow.REORDER_WINDOW + 1));
+        // a late packet never moves the window back
+        assertEquals(100, mWindow.getLast());
+        assertTrue(mWindow.accept(101));
+    }
+
+    @Test
+    public void takesSequencesFarBehindAsARestartedSender() {
+        mWindow.accept(5000);
+        assertTrue(mWindow.accept(5000 - SequenceWindow.REORDER_WINDOW));
+        assertEquals(5000 - SequenceWindow.REORDER_WINDOW, mWindow.getLast());
+        assertFalse(mWindow.accept(5000 - SequenceWindow.REORDER_WINDOW - 1));
+    }
+
+    @Test
+    public void acceptsAcrossTheWrap() {
+        assertTrue(mWindow.accept(Integer.MAX_VALUE - 1));
+        assertTrue(mWindow.accept(Integer.MAX_VALUE));
+        assertTrue(mWindow.accept(Integer.MIN_VALUE));
+        assertTrue(mWindow.accept(Integer.MIN_VALUE + 1));
+        // from before the wrap, so stale
+        assertFalse(mWindow.accept(Integer.MAX_VALUE));
+        assertFalse(mWindow.accept(Integer.MAX_VALUE - 10));
+
+        mWindow.reset();
+        assertTrue(mWindow.accept(-2));
+        assertTrue(mWindow.accept(-1));
+        assertTrue(mWindow.accept(0));
+        assertFalse(mWindow.accept(-1));
+    }
+
+    @Test
+    public void staleAcrossTheWrapIsJudgedByDistance() {
+        mWindow.accept(Integer.MIN_VALUE + 5);
+        assertFalse(mWindow.accept(Integer.MAX_VALUE - SequenceWindow.REORDER_WINDOW + 7));
+        assertTrue(mWindow.accept(Integer.MAX_VALUE - SequenceWindow.REORDER_WINDOW + 5));
+    }
+
+    @Test
+    public void resetStartsAFreshSession() {
+        mWindow.accept(200);
+        // a new session may start just behind the last one and must not be held back
+        assertFalse(mWindow.accept(150));
+        mWindow.reset();
+        assertFalse(mWindow.hasStarted());
+        assertTrue(mWindow.accept(150));
+        assertTrue(mWindow.hasStarted());
+        assertEquals(150, mWindow.getLast());
+        assertFalse(mWindow.accept(149));
+    }
+
+    @Test
+    public void resumedSessionKeepsTheWindow() {
+        // a unit resuming a session does not reset, so what it applied stays applied
+        mWindow.accept(300);
+        assertFalse(mWindow.accept(299));
+        assertEquals(300, mWindow.getLast());
+        assertTrue(mWindow.accept(301));
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.horecka.petdot.core;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link TouchSampleRing} on one thread, including the wrap and a full ring, and between a
+ * producer and a consumer thread.
+ */
+public class TouchSampleRingTest {
+    private static final int BATCH = 64;
+
+    private final int[] mActions = new int[BATCH];
+    private final float[] mXs = new float[BATCH];
+    private final float[] mYs = new float[BATCH];
+    private final long[] mTimes = new long[BATCH];
+    private final long[] mEnqueueTimes = new long[BATCH];
+
+    @Test
+    public void capacityRoundsUpToPowerOfTwo() {
+        assertEquals(2, new TouchSampleRing(1).capacity());
+        assertEquals(4, new TouchSampleRing(3).capacity());
+        assertEquals(4, new TouchSampleRing(4).capacity());
+        assertEquals(8, new TouchSampleRing(5).capacity());
+        assertEquals(512, new TouchSampleRing(512).capacity());
+    }
+
+    @Test
+    public void drainsInOfferOrder() {
+        TouchSampleRing ring = new TouchSampleRing(8);
+        assertTrue(ring.isEmpty());
+        long before = System.nanoTime();
+        assertTrue(ring.offer(TouchSampleRing.ACTION_DOWN, 1, 2, 100));
+        assertTrue(ring.offer(3, 4, 200));
+        assertTrue(ring.offer(TouchSampleRing.ACTION_UP, 5, 6, 300));
+        assertFalse(ring.isEmpty());
+
+        assertEquals(3, ring.drainTo(mActions, mXs, mYs, mTimes, mEnqueueTimes, BATCH));
+        assertTrue(ring.isEmpty());
+        assertEquals(TouchSampleRing.ACTION_DOWN, mActions[0]);
+        assertEquals(TouchSampleRing.ACTION_MOVE, mActions[1]);
+        assertEquals(TouchSampleRing.ACTION_UP, mActions[2]);
+        assertEquals(3f, mXs[1], 0);
+        assertEquals(6f, mYs[2], 0);
+        assertEquals(200, mTimes[1]);
+        assertTrue(mEnqueueTimes[0] - before >= 0);
+        assertTrue(mEnqueueTimes[2] - mEnqueueTimes[0] >= 0);
+        assertEquals(0, ring.drainTo(mXs, mYs, mTimes, BATCH));
+    }
+
+    @Test
+    public void drainStopsAtMax() {
+        TouchSampleRing ring = new TouchSampleRing(8);
+        for (int i = 0; i < 5; i++) ring.offer(i, 0, i);
+        assertEquals(2, ring.drainTo(mXs, mYs, mTimes, 2));
+        assertEquals(1f, mXs[1], 0);
+        assertEquals(3, ring.drainTo(mXs, mYs, mTimes, BATCH));
+        assertEquals(2f, mXs[0], 0);
+        assertEquals(4f, mXs[2], 0);
+    }
+
+    @Test
+    public void offerFailsWhenFull() {
+        TouchSampleRing ring = new TouchSampleRing(4);
+        for (int i = 0; i < 4; i++) assertTrue(ring.offer(i, 0, i));
+        assertFalse(ring.offer(4, 0, 4));
+        assertFalse(ring.offer(5, 0, 5));
+
+        // the rejected samples are gone, the accepted ones intact
+        assertEquals(4, ring.drainTo(mXs, mYs, mTimes, BATCH));
+        for (int i = 0; i < 4; i++) assertEquals(i, mXs[i], 0);
+    }
+
+    @Test
+    public void fullRingAcceptsAgainOnceDrained() {
+        TouchSampleRing ring = new TouchSampleRing(4);
+        for (int i = 0; i < 4; i++) ring.offer(i, 0, i);
+        assertFalse(ring.offer(4, 0, 4));
+        // the producer only sees the freed slot by refreshing its cached head
+        assertEquals(1, ring.drainTo(mXs, mYs, mTimes, 1));
+        assertTrue(ring.offer(4, 0, 4));
+        assertFalse(ring.offer(5, 0, 5));
+
+        // once drained in full, a whole capacity fits again on one refresh
+        assertEquals(4, ring.drainTo(mXs, mYs, mTimes, BATCH));
+        for (int i = 0; i < 4; i++) assertTrue(ring.offer(10 + i, 0, 0));
+        assertFalse(ring.offer(14, 0, 0));
+        assertEquals(4, ring.drainTo(mXs, mYs, mTimes, BATCH));
+        assertEquals(10f, mXs[0], 0);
+        assertEquals(13f, mXs[3], 0);
+    }
+
+    @Test
+    public void wrapsAroundCapacity() {
+        TouchSampleRing ring = new TouchSampleRing(4);
+        int next = 0;
+        int expected = 0;
+        // three at a time against a capacity of four moves the start of every batch
+        for (int round = 0; round < 100; round++) {
+            for (int i = 0; i < 3; i++) {
+                assertTrue(ring.offer(next, -next, next));
+                next++;
+            }
+            int count = ring.drainTo(mXs, mYs, mTimes, BATCH);
+            assertEquals(3, count);
+            for (int i = 0; i < count; i++) {
+                assertEquals(expected, mXs[i], 0);
+                assertEquals(-expected, mYs[i], 0);
+                assertEquals(expected, mTimes[i]);
+                expected++;
+            }
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void twoThreadsKeepOrderAndLoseNothingBelowCapacity() throws Exception {
+        final int samples = 1 << 20;
+        final TouchSampleRing ring = new TouchSampleRing(64);
+        final AtomicLong consumed = new AtomicLong();
+        final AtomicLong rejected = new AtomicLong();
+        Thread producer = new Thread("producer") {
+            @Override
+            public void run() {
+                for (int i = 0; i < samples; i++) {
+                    // never more outstanding than the ring holds, so every offer must fit
+                    while (i - consumed.get() >= ring.capacity()) Thread.yield();
+                    if (!ring.offer(i, i + 1, i)) rejected.incrementAndGet();
+                }
+            }
+        };
+        // a failed assertion must not leave it waiting forever
+        producer.setDaemon(true);
+        producer.start();
+
+        long expected = 0;
+        while (expected < samples && rejected.get() == 0) {
+            int count = ring.drainTo(mXs, mYs, mTimes, BATCH);
+            for (int i = 0; i < count; i++) {
+                assertEquals(expected, mTimes[i]);
+                assertEquals(expected, mXs[i], 0);
+                assertEquals(expected + 1, mYs[i], 0);
+                expected++;
+            }
+            consumed.set(expected);
+            if (count == 0) Thread.yield();
+        }
+        producer.join();
+        assertEquals(0, rejected.get());
+        assertEquals(samples, expected);
+        assertTrue(ring.isEmpty());
+    }
+
+    @Test(timeout = 30000)
+    public void twoThreadsKeepOrderWhenFull() throws Exception {
+        final int samples = 1 << 20;
+        final TouchSampleRing ring = new TouchSampleRing(16);
+        Thread producer = new Thread("producer") {
+            @Override
+            public void run() {
+                for (int i = 0; i < samples; i++) {
+                    while (!ring.offer(i, 0, i)) Thread.yield();
+                }
+            }
+        };
+        // a failed assertion must not leave it waiting forever
+        producer.setDaemon(true);
+        producer.start();
+
+        long expected = 0;
+        while (expected < samples) {
+            int count = ring.drainTo(mXs, mYs, mTimes, BATCH);
+            for (int i = 0; i < count; i++) {
+                assertEquals(expected++, mTimes[i]);
+            }
+            if (count == 0) Thread.yield();
+        }
+        producer.join();
+        assertTrue(ring.isEmpty());
+    }
+}